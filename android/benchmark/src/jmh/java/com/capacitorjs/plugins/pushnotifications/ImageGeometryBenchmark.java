@@ -0,0 +1,43 @@
+/* FREEGLE: JMH benchmarks for notification image layout arithmetic */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Collage cell layout and the centre-crop / sample-size maths run for every notification image.
+ */
+@State(Scope.Thread)
+public class ImageGeometryBenchmark {
+
+    @Param({ "2", "3", "4" })
+    public int photos;
+
+    // A typical phone photo, landscape and portrait
+    private int srcW = 4032;
+    private int srcH = 3024;
+
+    @Benchmark
+    public void collage(Blackhole bh) {
+        int[] cells = ImageGeometry.collageCells(photos, 1024, 512, 6);
+        for (int i = 0; i < photos; i++) {
+            int c = i * 4;
+            float aspect = (float) (cells[c + 2] - cells[c]) / (cells[c + 3] - cells[c + 1]);
+            bh.consume(ImageGeometry.centreCrop(i % 2 == 0 ? srcW : srcH, i % 2 == 0 ? srcH : srcW, aspect));
+        }
+    }
+
+    @Benchmark
+    public int[] largeIconCrop() {
+        return ImageGeometry.centreCrop(srcW, srcH, 1f);
+    }
+
+    @Benchmark
+    public int sampleSize() {
+        return ImageGeometry.calculateSampleSize(srcW, srcH, 512, 512);
+    }
+}
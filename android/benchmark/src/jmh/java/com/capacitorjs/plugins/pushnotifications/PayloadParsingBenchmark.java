@@ -0,0 +1,100 @@
+/* FREEGLE: JMH benchmarks for push payload parsing */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The per-push payload work in NotificationHelper and addNotificationActions, on a
+ * representative NEW_POSTS payload (four lines, four images, moreCount).
+ */
+@State(Scope.Thread)
+public class PayloadParsingBenchmark {
+
+    private Map<String, String> newPosts;
+    private Map<String, String> extras;
+
+    @Setup
+    public void setUp() {
+        newPosts = new HashMap<>();
+        newPosts.put("channel_id", "newposts");
+        newPosts.put("category", "NEW_POSTS");
+        newPosts.put("title", "7 new posts near you");
+        newPosts.put("message", "Sofa, Bike, Books, Lamp");
+        newPosts.put("summary", "Freegle Anytown");
+        newPosts.put("count", "7");
+        newPosts.put("notId", "123456");
+        newPosts.put("timestamp", "1760000000");
+        newPosts.put("moreCount", "3");
+        newPosts.put("image", "https://images.ilovefreegle.org/timg_1001.jpg");
+        newPosts.put(
+            "lines",
+            "[\"OFFER: Sofa (Anytown)\",\"OFFER: Bike (Anytown)\",\"WANTED: Books (Anytown)\",\"OFFER: Lamp (Anytown)\"]"
+        );
+        newPosts.put(
+            "images",
+            "[\"https://images.ilovefreegle.org/timg_1001.jpg\",\"https://images.ilovefreegle.org/timg_1002.jpg\","
+                + "\"https://images.ilovefreegle.org/timg_1003.jpg\",\"https://images.ilovefreegle.org/timg_1004.jpg\"]"
+        );
+        extras = new HashMap<>(32);
+    }
+
+    @Benchmark
+    public PushPayloadParser.Validity validate() {
+        return PushPayloadParser.validate(newPosts);
+    }
+
+    @Benchmark
+    public List<String> parseLines() throws JSONException {
+        return PushPayloadParser.parseLines(newPosts.get("lines"));
+    }
+
+    @Benchmark
+    public List<String> parseImageUrls() throws JSONException {
+        return PushPayloadParser.parseImageUrls(newPosts.get("images"), 6);
+    }
+
+    @Benchmark
+    public int parseMoreCount() {
+        return PushPayloadParser.parseMoreCount(newPosts.get("moreCount"));
+    }
+
+    @Benchmark
+    public boolean hasImages() {
+        return PushPayloadParser.hasImages(newPosts.get("image"), newPosts.get("images"));
+    }
+
+    @Benchmark
+    public void actionExtras(Blackhole bh) {
+        extras.clear();
+        PushPayloadParser.copyExtras(newPosts, extras::put);
+        for (int slot = 1; slot <= 3; slot++) {
+            bh.consume(PushPayloadParser.actionRequestCode(123456, slot));
+        }
+        bh.consume(extras);
+    }
+
+    /**
+     * Everything a NEW_POSTS render reads from its payload, going through PushPayload: built
+     * once, with lines and images each parsed once.
+     */
+    @Benchmark
+    public void parseOnce(Blackhole bh) throws JSONException {
+        PushPayload payload = PushPayload.from("0:1760000000000000%abc", newPosts);
+        bh.consume(payload.validity);
+        bh.consume(payload.hasImages());
+        bh.consume(payload.lines());
+        bh.consume(payload.imageUrls(6));
+        extras.clear();
+        payload.copyTo(extras::put);
+        bh.consume(extras);
+    }
+}
@@ -0,0 +1,260 @@
+/* FREEGLE: Bounded on-disk log of background push handling */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import android.os.Build;
+import androidx.annotation.VisibleForTesting;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Debug log written by MessagingService and BootReceiver while the app may not be running,
+ * and read back by getBackgroundPushLog.
+ *
+ * This used to be a single SharedPreferences string that was read, appended to and
+ * rewritten on every push, so each write cost O(log size) and the log never stopped
+ * growing. Now entries are appended as single lines to a segment file; once the segment
+ * passes SEGMENT_BYTES it becomes the previous segment (replacing the old one) and a new
+ * one is started. Appends are a single small write, and the log never holds more than two
+ * segments.
+ *
+ * Every entry gets an increasing sequence number, so readers can page with a cursor
+ * ("entries after seq N") rather than re-reading everything. clear() leaves the next number
+ * behind in a small SEQ file, so numbering carries on after a restart even with no entries.
+ */
+class BackgroundPushLog {
+
+    private static final String TAG = "BackgroundPushLog";
+    private static final String DIR = "push_log";
+    private static final String CURRENT = "current.log";
+    private static final String PREVIOUS = "previous.log";
+    private static final String SEQ = "next.seq";
+    private static final long SEGMENT_BYTES = 64 * 1024;
+
+    /**
+     * One log entry.
+     */
+    static final class Entry {
+
+        final long seq;
+        final long time;
+        final String text;
+
+        Entry(long seq, long time, String text) {
+            this.seq = seq;
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    private static File dir;
+    private static long nextSeq = -1;
+    private static long currentBytes;
+
+    /**
+     * Append text (may span several lines) as one entry, timestamped now.
+     */
+    static synchronized void append(Context context, String text) {
+        try {
+            init(context);
+            byte[] line = (nextSeq + "\t" + System.currentTimeMillis() + "\t" + escape(text) + "\n").getBytes(
+                StandardCharsets.UTF_8
+            );
+            try (OutputStream out = new FileOutputStream(new File(dir, CURRENT), true)) {
+                out.write(line);
+            }
+            nextSeq++;
+            currentBytes += line.length;
+            if (currentBytes > SEGMENT_BYTES) {
+                rotate();
+            }
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to append to push log", e);
+        }
+    }
+
+    /**
+     * Up to limit entries with a sequence number greater than sinceSeq, oldest first.
+     * Pass -1 to start from the oldest entry still kept.
+     */
+    static synchronized List<Entry> read(Context context, long sinceSeq, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            init(context);
+            readSegment(new File(dir, PREVIOUS), sinceSeq, limit, entries);
+            readSegment(new File(dir, CURRENT), sinceSeq, limit, entries);
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to read push log", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Delete all entries. Sequence numbers keep counting up, so existing cursors stay valid.
+     */
+    static synchronized void clear(Context context) {
+        try {
+            init(context);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            writeNextSeq();
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to save push log sequence", e);
+            return; // keep the entries rather than lose the numbering
+        }
+        new File(dir, PREVIOUS).delete();
+        new File(dir, CURRENT).delete();
+        currentBytes = 0;
+    }
+
+    /**
+     * Forget what's held in memory, as a process restart would.
+     */
+    @VisibleForTesting
+    static synchronized void unload() {
+        dir = null;
+        nextSeq = -1;
+        currentBytes = 0;
+    }
+
+    private static void init(Context context) throws IOException {
+        if (nextSeq >= 0) {
+            return;
+        }
+        dir = new File(context.getApplicationContext().getFilesDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File current = new File(dir, CURRENT);
+        currentBytes = current.length();
+
+        // Carry on numbering from the newest entry on disk.
+        long last = lastSeq(current);
+        if (last < 0) {
+            last = lastSeq(new File(dir, PREVIOUS));
+        }
+        nextSeq = Math.max(last + 1, readNextSeq());
+
+        // The old SharedPreferences-based log is no longer read; drop it.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            context.deleteSharedPreferences("push_debug");
+        }
+    }
+
+    private static long readNextSeq() {
+        File file = new File(dir, SEQ);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try (BufferedReader reader = open(file)) {
+            String line = reader.readLine();
+            return line != null ? Long.parseLong(line.trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeNextSeq() throws IOException {
+        File tmp = new File(dir, SEQ + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write((nextSeq + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(new File(dir, SEQ))) {
+            tmp.delete();
+            throw new IOException("Cannot save " + SEQ);
+        }
+    }
+
+    private static void rotate() {
+        File current = new File(dir, CURRENT);
+        File previous = new File(dir, PREVIOUS);
+        previous.delete();
+        if (!current.renameTo(previous)) {
+            current.delete();
+        }
+        currentBytes = 0;
+    }
+
+    private static long lastSeq(File segment) throws IOException {
+        long last = -1;
+        if (!segment.isFile()) {
+            return last;
+        }
+        try (BufferedReader reader = open(segment)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry != null) {
+                    last = entry.seq;
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void readSegment(File segment, long sinceSeq, int limit, List<Entry> out) throws IOException {
+        if (!segment.isFile() || out.size() >= limit) {
+            return;
+        }
+        try (BufferedReader reader = open(segment)) {
+            String line;
+            while (out.size() < limit && (line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry != null && entry.seq > sinceSeq) {
+                    out.add(entry);
+                }
+            }
+        }
+    }
+
+    private static BufferedReader open(File segment) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8));
+    }
+
+    private static Entry parse(String line) {
+        int tab1 = line.indexOf('\t');
+        int tab2 = tab1 < 0 ? -1 : line.indexOf('\t', tab1 + 1);
+        if (tab2 < 0) {
+            return null; // torn write at the end of a segment
+        }
+        try {
+            long seq = Long.parseLong(line.substring(0, tab1));
+            long time = Long.parseLong(line.substring(tab1 + 1, tab2));
+            return new Entry(seq, time, unescape(line.substring(tab2 + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -5,8 +5,6 @@ package com.capacitorjs.plugins.pushnotifications;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.util.Log;
 import com.google.firebase.messaging.FirebaseMessaging;
 
 /**
@@ -27,16 +25,13 @@ public class BootReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            Log.d(TAG, "Device boot completed - initializing FCM");
+            // Loaded once per process; applies the configured log level before we log anything
+            PushEnvironment.get(context);
+            PushLog.d(TAG, "Device boot completed - initializing FCM");
 
-            // Log to SharedPreferences for debugging
-            try {
-                SharedPreferences prefs = context.getSharedPreferences("push_debug", Context.MODE_PRIVATE);
-                String existing = prefs.getString("log", "");
-                String bootLog = "BootReceiver triggered at " + System.currentTimeMillis() + "\n";
-                prefs.edit().putString("log", existing + bootLog).apply();
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to save boot log", e);
+            // Log to the background push log for debugging
+            if (PushLog.backgroundLogEnabled()) {
+                BackgroundPushLog.append(context, "BootReceiver triggered at " + System.currentTimeMillis());
             }
 
             // Initialize Firebase Messaging
@@ -48,15 +43,15 @@ public class BootReceiver extends BroadcastReceiver {
                 FirebaseMessaging.getInstance().getToken()
                     .addOnCompleteListener(task -> {
                         if (task.isSuccessful()) {
-                            Log.d(TAG, "FCM token retrieved after boot");
+                            PushLog.d(TAG, "FCM token retrieved after boot");
                         } else {
-                            Log.w(TAG, "Failed to get FCM token after boot", task.getException());
+                            PushLog.w(TAG, "Failed to get FCM token after boot", task.getException());
                         }
                     });
 
-                Log.d(TAG, "FCM initialized after boot");
+                PushLog.d(TAG, "FCM initialized after boot");
             } catch (Exception e) {
-                Log.e(TAG, "Error initializing FCM after boot", e);
+                PushLog.e(TAG, "Error initializing FCM after boot", e);
             }
         }
     }
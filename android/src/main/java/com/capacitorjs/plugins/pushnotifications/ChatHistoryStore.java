@@ -0,0 +1,301 @@
+/* FREEGLE: Bounded on-disk history of recent messages per chat, for MessagingStyle */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The last few messages of each chat with a notification on screen, so a CHAT_MESSAGE can show
+ * the conversation rather than replacing the previous message.
+ *
+ * A chat is keyed by the optional "chatid" payload field, falling back to notId. Each chat keeps
+ * at most MAX_MESSAGES messages of up to MAX_TEXT chars, at most MAX_CHATS chats are kept (least
+ * recently updated dropped first) and anything older than MAX_AGE_MS is dropped. The whole store
+ * is a few KB, so it's held in memory and rewritten in full (tmp file + rename) on each change.
+ */
+class ChatHistoryStore {
+
+    private static final String TAG = "ChatHistoryStore";
+    private static final String DIR = "push_chats";
+    private static final String FILE = "chats.json";
+    static final int MAX_MESSAGES = 10;
+    static final int MAX_CHATS = 20;
+    static final int MAX_TEXT = 500;
+    static final long MAX_AGE_MS = 48 * 60 * 60 * 1000L;
+
+    /**
+     * One message; self is true for inline replies sent from the notification.
+     */
+    static final class Message {
+
+        final long time;
+        final String sender;
+        final String text;
+        final boolean self;
+
+        Message(long time, String sender, String text, boolean self) {
+            this.time = time;
+            this.sender = sender;
+            this.text = text != null && text.length() > MAX_TEXT ? text.substring(0, MAX_TEXT) : text;
+            this.self = self;
+        }
+
+        boolean sameAs(Message other) {
+            return time == other.time && self == other.self && equal(sender, other.sender) && equal(text, other.text);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * A snapshot of one chat: the notification it is shown in and its messages, oldest first.
+     */
+    static final class Chat {
+
+        final String key;
+        final int notId;
+        final String title;
+        final String channelId;
+        final long updated;
+        final List<Message> messages;
+
+        Chat(String key, int notId, String title, String channelId, long updated, List<Message> messages) {
+            this.key = key;
+            this.notId = notId;
+            this.title = title;
+            this.channelId = channelId;
+            this.updated = updated;
+            this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
+        }
+
+        Message last() {
+            return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        }
+    }
+
+    private static File file;
+    // Least recently updated first
+    private static LinkedHashMap<String, Chat> chats;
+
+    private ChatHistoryStore() {}
+
+    /**
+     * Store key for a chat: the payload's "chatid", or the notification id if there isn't one.
+     */
+    static String chatKey(String chatId, int notId) {
+        return chatId != null && !chatId.isEmpty() ? "c:" + chatId : "n:" + notId;
+    }
+
+    /**
+     * Add a message to a chat and return the updated chat. A null title or channelId keeps the
+     * chat's existing one. A repeat of the chat's last message is not added twice.
+     */
+    static synchronized Chat append(Context context, String key, int notId, String title, String channelId, Message message) {
+        load(context);
+        long now = System.currentTimeMillis();
+        Chat existing = chats.remove(key);
+        List<Message> messages = new ArrayList<>();
+        if (existing != null) {
+            messages.addAll(existing.messages);
+            title = title != null ? title : existing.title;
+            channelId = channelId != null ? channelId : existing.channelId;
+        }
+        Message last = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        if (last == null || !last.sameAs(message)) {
+            messages.add(message);
+        }
+        if (messages.size() > MAX_MESSAGES) {
+            messages = messages.subList(messages.size() - MAX_MESSAGES, messages.size());
+        }
+        Chat chat = new Chat(key, notId, title, channelId, now, messages);
+        chats.put(key, chat);
+        prune(now);
+        save();
+        return chat;
+    }
+
+    /**
+     * Chats with history, most recently updated first.
+     */
+    static synchronized List<Chat> chats(Context context) {
+        load(context);
+        if (prune(System.currentTimeMillis())) {
+            save();
+        }
+        List<Chat> result = new ArrayList<>(chats.values());
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Forget the chat shown in notification notId, e.g. once it has been read or dismissed.
+     */
+    static synchronized void clearNotification(Context context, int notId) {
+        load(context);
+        boolean changed = false;
+        for (Iterator<Chat> it = chats.values().iterator(); it.hasNext();) {
+            if (it.next().notId == notId) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * Forget all chats, e.g. when every notification is cleared.
+     */
+    static synchronized void clearAll(Context context) {
+        load(context);
+        if (!chats.isEmpty()) {
+            chats.clear();
+            save();
+        }
+    }
+
+    /** Drops expired messages, empty chats and chats over MAX_CHATS. Returns true if anything went. */
+    private static boolean prune(long now) {
+        long cutoff = now - MAX_AGE_MS;
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, Chat>> it = chats.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Chat> entry = it.next();
+            Chat chat = entry.getValue();
+            List<Message> kept = new ArrayList<>();
+            for (Message message : chat.messages) {
+                if (message.time >= cutoff) {
+                    kept.add(message);
+                }
+            }
+            if (kept.isEmpty()) {
+                it.remove();
+                changed = true;
+            } else if (kept.size() != chat.messages.size()) {
+                entry.setValue(new Chat(chat.key, chat.notId, chat.title, chat.channelId, chat.updated, kept));
+                changed = true;
+            }
+        }
+        for (Iterator<String> it = chats.keySet().iterator(); chats.size() > MAX_CHATS && it.hasNext();) {
+            it.next();
+            it.remove();
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static void load(Context context) {
+        if (chats != null) {
+            return;
+        }
+        chats = new LinkedHashMap<>();
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            PushLog.e(TAG, "Cannot create " + dir);
+        }
+        file = new File(dir, FILE);
+        if (!file.exists()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+            }
+            JSONArray array = new JSONArray(sb.toString());
+            for (int i = 0; i < array.length(); i++) {
+                Chat chat = fromJson(array.getJSONObject(i));
+                chats.put(chat.key, chat);
+            }
+        } catch (IOException | JSONException e) {
+            // Unreadable or cut short; start again rather than fail every notification
+            PushLog.w(TAG, "Discarding unreadable chat history", e);
+            chats.clear();
+        }
+    }
+
+    private static void save() {
+        try {
+            JSONArray array = new JSONArray();
+            for (Chat chat : chats.values()) {
+                array.put(toJson(chat));
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException | JSONException e) {
+            PushLog.e(TAG, "Failed to save chat history", e);
+        }
+    }
+
+    private static JSONObject toJson(Chat chat) throws JSONException {
+        JSONArray messages = new JSONArray();
+        for (Message message : chat.messages) {
+            JSONObject json = new JSONObject();
+            json.put("time", message.time);
+            json.put("sender", message.sender);
+            json.put("text", message.text);
+            json.put("self", message.self);
+            messages.put(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("key", chat.key);
+        json.put("notId", chat.notId);
+        json.put("title", chat.title);
+        json.put("channelId", chat.channelId);
+        json.put("updated", chat.updated);
+        json.put("messages", messages);
+        return json;
+    }
+
+    private static Chat fromJson(JSONObject json) throws JSONException {
+        JSONArray array = json.getJSONArray("messages");
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject message = array.getJSONObject(i);
+            messages.add(
+                new Message(
+                    message.getLong("time"),
+                    message.optString("sender", null),
+                    message.optString("text", null),
+                    message.optBoolean("self")
+                )
+            );
+        }
+        return new Chat(
+            json.getString("key"),
+            json.getInt("notId"),
+            json.optString("title", null),
+            json.optString("channelId", null),
+            json.getLong("updated"),
+            messages
+        );
+    }
+}
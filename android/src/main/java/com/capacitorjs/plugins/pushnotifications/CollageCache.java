@@ -0,0 +1,92 @@
+/* FREEGLE: Persistent cache of rendered NEW_POSTS collages */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores composited NEW_POSTS collages on disk as WebP, keyed by the ordered list of
+ * photo URLs plus the collage layout. A digest that is re-sent with the same "images"
+ * (an update, a redelivery) is shown from here without downloading, decoding or drawing
+ * anything. Bounded by DiskImageStore's LRU eviction.
+ */
+class CollageCache {
+
+    private static final String TAG = "CollageCache";
+    private static final long DISK_CACHE_BYTES = 4L * 1024 * 1024; // ~50-100 collages
+    private static final String DISK_CACHE_DIR = "notification_collages";
+    private static final int WEBP_QUALITY = 85;
+
+    private static CollageCache instance;
+
+    // Encoding a 1024x512 WebP takes tens of ms, so it's done off the render path.
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CollageCacheWriter");
+        t.setDaemon(true);
+        return t;
+    });
+    private final DiskImageStore disk;
+
+    static synchronized CollageCache get(Context context) {
+        if (instance == null) {
+            instance = new CollageCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CollageCache(Context context) {
+        disk = new DiskImageStore(new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+    }
+
+    /**
+     * Cache key for a collage of urls (in order) drawn with the given layout description.
+     * Changing the layout changes the key, so stale renders are never shown.
+     */
+    static String key(List<String> urls, String layout) {
+        StringBuilder sb = new StringBuilder(layout);
+        for (String url : urls) {
+            sb.append('\n').append(url);
+        }
+        return sb.toString();
+    }
+
+    Bitmap get(String key) {
+        byte[] data = disk.get(key);
+        if (data == null) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+        if (bitmap == null) {
+            disk.remove(key);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Encode and store collage in the background. The bitmap must not be modified afterwards.
+     */
+    void put(String key, Bitmap collage) {
+        writer.execute(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            if (collage.compress(webpFormat(), WEBP_QUALITY, out)) {
+                disk.put(key, out.toByteArray());
+            } else {
+                PushLog.w(TAG, "Failed to encode collage");
+            }
+        });
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        // Plain WEBP is deprecated from API 30 but is the only WebP option below it.
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+}
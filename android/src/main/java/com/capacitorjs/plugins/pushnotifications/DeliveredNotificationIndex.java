@@ -0,0 +1,224 @@
+/* FREEGLE: In-process index of the notifications on screen */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the plugin has posted, so getDeliveredNotifications and payload-driven cancels don't
+ * need to walk every notification's extras each time.
+ *
+ * NotificationPoster records each notification as it posts or cancels it. NotificationHelper
+ * puts the push payload into the notification's extras under EXTRA_PAYLOAD, so an entry
+ * (and one rebuilt from the system list) carries the payload and its chat id and category.
+ *
+ * The index can't see notifications the user swipes away, those posted by someone else, or
+ * anything from before the process started. So query() reconciles it with the system list
+ * when asked to (getDeliveredNotifications always does, so it stays as accurate as reading
+ * the system list directly) or when that hasn't been done for RECONCILE_AFTER_MS. Only
+ * notifications the index doesn't know yet have their extras read. Entries posted within
+ * RECONCILE_GRACE_MS are kept even if the system doesn't list them yet, because notify()
+ * is asynchronous.
+ */
+class DeliveredNotificationIndex {
+
+    /** Notification extra holding the push payload as a Bundle of strings. */
+    static final String EXTRA_PAYLOAD = "com.capacitorjs.plugins.pushnotifications.PAYLOAD";
+    static final long RECONCILE_AFTER_MS = 30_000;
+    static final long RECONCILE_GRACE_MS = 5_000;
+
+    /**
+     * One notification on screen.
+     */
+    static final class Entry {
+
+        final int id;
+        final String tag;
+        final String title;
+        final String body;
+        final String group;
+        final boolean groupSummary;
+        final String channelId;
+        /** From the payload: null for notifications the plugin didn't render from a push. */
+        final String category;
+        final String chatId;
+        /** The notification's String extras, as getDeliveredNotifications has always returned. */
+        final Map<String, String> extras;
+        /** The push payload: empty for notifications the plugin didn't render from a push. */
+        final Map<String, String> payload;
+        final long postedAt;
+
+        private Entry(int id, String tag, Notification notification, long postedAt) {
+            this.id = id;
+            this.tag = tag;
+            this.postedAt = postedAt;
+            Bundle bundle = notification.extras;
+            CharSequence titleText = bundle != null ? bundle.getCharSequence(Notification.EXTRA_TITLE) : null;
+            CharSequence bodyText = bundle != null ? bundle.getCharSequence(Notification.EXTRA_TEXT) : null;
+            title = titleText != null ? titleText.toString() : null;
+            body = bodyText != null ? bodyText.toString() : null;
+            group = notification.getGroup();
+            groupSummary = (notification.flags & Notification.FLAG_GROUP_SUMMARY) != 0;
+            channelId = notification.getChannelId();
+
+            extras = Collections.unmodifiableMap(strings(bundle));
+            payload = Collections.unmodifiableMap(strings(bundle != null ? bundle.getBundle(EXTRA_PAYLOAD) : null));
+            category = payload.get("category");
+            chatId = payload.get("chatid");
+        }
+
+        boolean matches(String tag, int id) {
+            return this.id == id && (this.tag == null ? tag == null : this.tag.equals(tag));
+        }
+    }
+
+    /**
+     * Criteria for query(); null fields match anything.
+     */
+    static final class Filter {
+
+        String channelId;
+        String category;
+        String group;
+        String chatId;
+        /** Push payload keys that must be present; a non-null value must also match. */
+        Map<String, String> data;
+
+        boolean isEmpty() {
+            return channelId == null && category == null && group == null && chatId == null && (data == null || data.isEmpty());
+        }
+
+        boolean accepts(Entry entry) {
+            if (!matches(channelId, entry.channelId) || !matches(category, entry.category)) {
+                return false;
+            }
+            if (!matches(group, entry.group) || !matches(chatId, entry.chatId)) {
+                return false;
+            }
+            if (data != null) {
+                for (Map.Entry<String, String> wanted : data.entrySet()) {
+                    String value = entry.payload.get(wanted.getKey());
+                    if (value == null || (wanted.getValue() != null && !wanted.getValue().equals(value))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static boolean matches(String wanted, String actual) {
+            return wanted == null || wanted.equals(actual);
+        }
+    }
+
+    // Keyed by tag + id, in posting order
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private static long lastReconcile = -1;
+
+    private DeliveredNotificationIndex() {}
+
+    /**
+     * Record a notification just posted (or updated) as tag / id.
+     */
+    static synchronized void posted(String tag, int id, Notification notification) {
+        String key = key(tag, id);
+        entries.remove(key); // an update moves to the end
+        entries.put(key, new Entry(id, tag, notification, SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * An entry for a notification that isn't (yet) in the index, e.g. one still waiting in
+     * NotificationPoster, so a Filter can be tried against it.
+     */
+    static Entry describe(String tag, int id, Notification notification) {
+        return new Entry(id, tag, notification, SystemClock.elapsedRealtime());
+    }
+
+    static synchronized void removed(String tag, int id) {
+        entries.remove(key(tag, id));
+    }
+
+    static synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * The notifications matching filter, oldest first. Reconciles with notificationManager
+     * first if the index is stale or refresh is set.
+     */
+    static synchronized List<Entry> query(NotificationManager notificationManager, Filter filter, boolean refresh) {
+        long now = SystemClock.elapsedRealtime();
+        if (refresh || lastReconcile < 0 || now - lastReconcile > RECONCILE_AFTER_MS) {
+            reconcile(notificationManager, now);
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (filter == null || filter.accepts(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private static void reconcile(NotificationManager notificationManager, long now) {
+        StatusBarNotification[] active;
+        try {
+            active = notificationManager.getActiveNotifications();
+        } catch (RuntimeException e) {
+            PushLog.w("DeliveredNotificationIndex", "Could not list active notifications: ", e.getMessage());
+            return;
+        }
+        Map<String, Entry> current = new HashMap<>();
+        for (StatusBarNotification sbn : active) {
+            String key = key(sbn.getTag(), sbn.getId());
+            Entry known = entries.get(key);
+            Notification notification = sbn.getNotification();
+            if (known != null) {
+                current.put(key, known);
+            } else if (notification != null) {
+                current.put(key, new Entry(sbn.getId(), sbn.getTag(), notification, now));
+            }
+        }
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (!current.containsKey(entry.getKey()) && now - entry.getValue().postedAt > RECONCILE_GRACE_MS) {
+                it.remove();
+            }
+        }
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+            if (!entries.containsKey(entry.getKey())) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        lastReconcile = now;
+    }
+
+    /** The String values of a Bundle; other types (bitmaps, parcelables, ...) are skipped. */
+    private static Map<String, String> strings(Bundle bundle) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (bundle != null) {
+            for (String key : bundle.keySet()) {
+                Object value = bundle.get(key);
+                if (value instanceof String) {
+                    map.put(key, (String) value);
+                }
+            }
+        }
+        return map;
+    }
+
+    private static String key(String tag, int id) {
+        return tag == null ? Integer.toString(id) : tag + "\u0000" + id;
+    }
+}
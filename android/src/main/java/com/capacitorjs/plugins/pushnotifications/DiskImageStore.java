@@ -0,0 +1,201 @@
+/* FREEGLE: Size-capped on-disk blob store used by the notification image caches */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A small LRU blob store in a private cache directory.
+ *
+ * Each entry is one file named by the SHA-1 of its key. Reads bump the file's
+ * modification time, and once the directory grows past maxBytes the least recently
+ * used files are deleted until it is back under the low-water mark. All methods are
+ * synchronized: entries are small and writes are rare compared to network I/O, so a
+ * single lock keeps the bookkeeping simple.
+ *
+ * The OS may also clear the cache directory under storage pressure; a missing file is
+ * just a miss.
+ */
+class DiskImageStore {
+
+    private static final String TAG = "DiskImageStore";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long maxBytes;
+    private long currentBytes = -1; // lazily computed on first write
+
+    DiskImageStore(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return the stored bytes for key, or null if absent or unreadable.
+     */
+    synchronized byte[] get(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = readFully(in, (int) file.length(), Integer.MAX_VALUE);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            PushLog.w(TAG, "Failed to read cache entry, dropping it: ", e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store data under key, replacing any previous entry, then evict if over budget.
+     * Entries larger than the whole budget are not stored.
+     */
+    synchronized void put(String key, byte[] data) {
+        if (data == null || data.length == 0 || data.length > maxBytes) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            PushLog.w(TAG, "Cannot create cache directory ", dir);
+            return;
+        }
+        ensureSizeKnown();
+
+        File file = fileFor(key);
+        File tmp = new File(dir, file.getName() + TMP_SUFFIX);
+        long previous = file.isFile() ? file.length() : 0;
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        } catch (IOException e) {
+            PushLog.w(TAG, "Failed to write cache entry: ", e.getMessage());
+            tmp.delete();
+            return;
+        }
+        // Rename so a concurrent reader (or a crash) never sees a half-written file.
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        currentBytes += data.length - previous;
+        trimToSize();
+    }
+
+    synchronized boolean contains(String key) {
+        return fileFor(key).isFile();
+    }
+
+    synchronized void remove(String key) {
+        File file = fileFor(key);
+        long length = file.length();
+        if (file.delete() && currentBytes >= 0) {
+            currentBytes -= length;
+        }
+    }
+
+    synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        currentBytes = 0;
+    }
+
+    synchronized long sizeBytes() {
+        ensureSizeKnown();
+        return currentBytes;
+    }
+
+    private void ensureSizeKnown() {
+        if (currentBytes >= 0) {
+            return;
+        }
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(TMP_SUFFIX)) {
+                    f.delete(); // left over from a crash mid-write
+                } else {
+                    total += f.length();
+                }
+            }
+        }
+        currentBytes = total;
+    }
+
+    /**
+     * Evict least recently used entries until we are at 90% of the budget, so that a
+     * steady stream of new entries doesn't trigger a directory scan on every write.
+     */
+    private void trimToSize() {
+        if (currentBytes <= maxBytes) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long target = maxBytes * 9 / 10;
+        for (File f : files) {
+            if (currentBytes <= target) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                currentBytes -= length;
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, hashKey(key));
+    }
+
+    /**
+     * Hex SHA-1 of key, used as a filesystem-safe file name.
+     */
+    static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android; fall back to something stable anyway.
+            return Integer.toHexString(key.hashCode()) + "_" + key.length();
+        }
+    }
+
+    /**
+     * Read the whole stream, or return null once more than maxBytes have been read.
+     */
+    static byte[] readFully(InputStream in, int sizeHint, int maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint > 0 ? Math.min(sizeHint, maxBytes) : 16 * 1024);
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > maxBytes) {
+                return null;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+/* FREEGLE: Batches received / action events into one bridge call */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects pushNotificationReceived and pushNotificationActionPerformed events and hands
+ * them to the bridge as a single pushNotificationsReceived event, used when batchEvents is set.
+ *
+ * Each event to the WebView is serialised and evaluated separately, so a burst or a replay
+ * of queued pushes floods the JS thread. Here the first event starts a WINDOW_MS timer;
+ * everything arriving before it fires goes out together. A batch reaching MAX_BATCH events is
+ * delivered straight away, and flush() delivers whatever is waiting, e.g. at the end of a
+ * replay. Received messages and actions are kept in arrival order within their own arrays.
+ */
+class EventBatcher {
+
+    static final long WINDOW_MS = 100;
+    static final int MAX_BATCH = 50;
+
+    /**
+     * Receives each batch: { notifications: [...], actions: [...] }.
+     */
+    interface Sink {
+        void deliver(JSObject batch);
+    }
+
+    private final Sink sink;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "EventBatcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this
+    private JSArray notifications = new JSArray();
+    private JSArray actions = new JSArray();
+    private boolean flushScheduled;
+
+    EventBatcher(Sink sink) {
+        this.sink = sink;
+    }
+
+    void addReceived(JSObject notification) {
+        add(notification, false);
+    }
+
+    void addAction(JSObject action) {
+        add(action, true);
+    }
+
+    /**
+     * Deliver everything waiting now, on the calling thread.
+     */
+    void flush() {
+        JSObject batch;
+        int size;
+        synchronized (this) {
+            flushScheduled = false;
+            size = notifications.length() + actions.length();
+            if (size == 0) {
+                return;
+            }
+            batch = new JSObject();
+            batch.put("notifications", notifications);
+            batch.put("actions", actions);
+            notifications = new JSArray();
+            actions = new JSArray();
+        }
+        PushLog.d("EventBatcher", "Delivering batch of events: ", size);
+        sink.deliver(batch);
+    }
+
+    private void add(JSObject event, boolean action) {
+        boolean full;
+        synchronized (this) {
+            (action ? actions : notifications).put(event);
+            full = notifications.length() + actions.length() >= MAX_BATCH;
+            if (!full && !flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+}
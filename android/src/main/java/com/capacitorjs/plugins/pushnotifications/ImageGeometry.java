@@ -0,0 +1,74 @@
+/* FREEGLE: Pure layout and crop arithmetic for notification images */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+/**
+ * Rectangle arithmetic shared by the image decoder and the collage renderer. Rectangles are
+ * plain {left, top, right, bottom} ints so this has no Android dependencies and can be
+ * benchmarked on a desktop JVM (see android/benchmark).
+ */
+final class ImageGeometry {
+
+    private ImageGeometry() {}
+
+    /**
+     * Largest power-of-two sample size whose result still covers reqW x reqH.
+     * Sources already smaller than the target decode at full size.
+     */
+    static int calculateSampleSize(int srcW, int srcH, int reqW, int reqH) {
+        int sampleSize = 1;
+        while (srcW / (sampleSize * 2) >= reqW && srcH / (sampleSize * 2) >= reqH) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * The largest centred {left, top, right, bottom} region of a srcW x srcH image with the
+     * given width/height aspect ratio. Same crop that drawCropped applies on the canvas.
+     */
+    static int[] centreCrop(int srcW, int srcH, float dstAspect) {
+        float srcAspect = (float) srcW / srcH;
+        int w, h;
+        if (srcAspect > dstAspect) {
+            // source is relatively wider → crop its sides
+            h = srcH;
+            w = Math.round(srcH * dstAspect);
+        } else {
+            // source is relatively taller → crop top/bottom
+            w = srcW;
+            h = Math.round(srcW / dstAspect);
+        }
+        int x = (srcW - w) / 2;
+        int y = (srcH - h) / 2;
+        return new int[] { x, y, x + w, y + h };
+    }
+
+    /**
+     * Cells of a width x height collage of n (2-4) photos separated by gap pixels, as
+     * consecutive {left, top, right, bottom} quadruples in payload order:
+     * 2 = side by side, 3 = one tall cell on the left and two stacked on the right, 4 = 2x2 grid.
+     */
+    static int[] collageCells(int n, int width, int height, int gap) {
+        int colW = (width - gap) / 2;
+        int rowH = (height - gap) / 2;
+        if (n == 2) {
+            return new int[] {
+                0, 0, colW, height,
+                colW + gap, 0, width, height
+            };
+        } else if (n == 3) {
+            return new int[] {
+                0, 0, colW, height,
+                colW + gap, 0, width, rowH,
+                colW + gap, rowH + gap, width, height
+            };
+        }
+        return new int[] {
+            0, 0, colW, rowH,
+            colW + gap, 0, width, rowH,
+            0, rowH + gap, colW, height,
+            colW + gap, rowH + gap, width, height
+        };
+    }
+}
@@ -0,0 +1,207 @@
+/* FREEGLE: Shared HTTP client for notification image downloads */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One process-wide client for fetching notification images.
+ *
+ * Android's HttpURLConnection keeps a pool of idle keep-alive connections, but only gets to
+ * reuse one if the response body is read to the end and the stream closed. Calling
+ * disconnect() after every image, as the old code did, threw the connection away and paid
+ * for a fresh TCP+TLS handshake to the same CDN host each time. This client always drains
+ * and closes the body instead, caps concurrent requests per host so a burst of collages
+ * doesn't open a socket per photo, and supports conditional requests (If-None-Match /
+ * If-Modified-Since) so a stale cached image can be revalidated with a body-less 304.
+ *
+ * There is no HTTP/2 multiplexing: the platform HttpURLConnection only speaks HTTP/1.1, and
+ * getting h2 would mean shipping OkHttp (or Cronet) inside every host app for the sake of at
+ * most COLLAGE_MAX_PHOTOS requests per digest. A few pooled keep-alive connections per host
+ * cover that, which is what maxRequestsPerHost bounds.
+ *
+ * Timeouts and limits are constructor parameters so the client can be pointed at a local
+ * stand-in server with short timeouts (see ImageHttpClientTest).
+ */
+class ImageHttpClient {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 5000;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    private static ImageHttpClient instance;
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxRequestsPerHost;
+    private final int maxBodyBytes;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    static synchronized ImageHttpClient get() {
+        if (instance == null) {
+            instance = new ImageHttpClient(
+                DEFAULT_CONNECT_TIMEOUT_MS,
+                DEFAULT_READ_TIMEOUT_MS,
+                DEFAULT_MAX_REQUESTS_PER_HOST,
+                NotificationImageDecoder.MAX_ENCODED_BYTES
+            );
+        }
+        return instance;
+    }
+
+    ImageHttpClient(int connectTimeoutMs, int readTimeoutMs, int maxRequestsPerHost, int maxBodyBytes) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Result of a fetch. body is null for 304 Not Modified.
+     */
+    static final class Response {
+
+        final int code;
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        /** Freshness lifetime from Cache-Control max-age, or -1 if the server didn't say. */
+        final long maxAgeMs;
+
+        Response(int code, byte[] body, String etag, String lastModified, long maxAgeMs) {
+            this.code = code;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.maxAgeMs = maxAgeMs;
+        }
+
+        boolean isNotModified() {
+            return code == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+    }
+
+    /**
+     * GET imageUrl, conditionally if etag or lastModified is given.
+     * Returns a 200 response with a body, or a 304 without one; anything else is an IOException.
+     */
+    Response fetch(String imageUrl, String etag, String lastModified) throws IOException {
+        URL url = new URL(imageUrl);
+        Semaphore permits = hostPermits.computeIfAbsent(url.getHost(), h -> new Semaphore(maxRequestsPerHost));
+        try {
+            if (!permits.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent image requests to " + url.getHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + url.getHost());
+        }
+        try {
+            return execute(url, etag, lastModified);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Response execute(URL url, String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        boolean reusable = false;
+        try {
+            connection.setDoInput(true);
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty("Accept", "image/webp,image/*;q=0.8");
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                reusable = true;
+                return new Response(code, null, etag, lastModified, parseMaxAge(connection.getHeaderField("Cache-Control")));
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                reusable = drain(connection.getErrorStream());
+                throw new IOException("HTTP " + code);
+            }
+
+            // Refuse oversized bodies up front rather than buffering them only to reject them.
+            int contentLength = connection.getContentLength();
+            if (contentLength > maxBodyBytes) {
+                throw new IOException("Image too large (" + contentLength + " bytes)");
+            }
+            byte[] body;
+            try (InputStream input = connection.getInputStream()) {
+                body = DiskImageStore.readFully(input, contentLength, maxBodyBytes);
+            }
+            if (body == null) {
+                throw new IOException("Image larger than " + maxBodyBytes + " bytes");
+            }
+            reusable = true;
+            return new Response(
+                code,
+                body,
+                connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"),
+                parseMaxAge(connection.getHeaderField("Cache-Control"))
+            );
+        } finally {
+            // Only a fully consumed response leaves the socket fit for the keep-alive pool.
+            if (!reusable) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static boolean drain(InputStream in) {
+        if (in == null) {
+            return true;
+        }
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[4096];
+            int total = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                total += read;
+                if (total > 64 * 1024) {
+                    return false; // not worth reading a large error page just to keep the socket
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * max-age from a Cache-Control header in ms, 0 for no-cache/no-store, -1 if absent.
+     */
+    static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return -1;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim().toLowerCase(java.util.Locale.ROOT);
+            if (d.equals("no-cache") || d.equals("no-store")) {
+                return 0;
+            }
+            if (d.startsWith("max-age=")) {
+                try {
+                    return Long.parseLong(d.substring("max-age=".length())) * 1000;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -2,8 +2,6 @@
 
 package com.capacitorjs.plugins.pushnotifications;
 
-import android.content.SharedPreferences;
-import android.util.Log;
 import androidx.annotation.NonNull;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
@@ -22,44 +20,88 @@ public class MessagingService extends FirebaseMessagingService {
     @Override
     public void onMessageReceived(@NonNull RemoteMessage remoteMessage) {
         super.onMessageReceived(remoteMessage);
+        long receiveStart = PushMetrics.start();
+        if (remoteMessage.getSentTime() > 0) {
+            PushMetrics.recordMillis(PushMetrics.Stage.DELIVERY, System.currentTimeMillis() - remoteMessage.getSentTime());
+        }
+
+        // Loaded once per process; also applies the configured log level before we log anything
+        PushEnvironment.get(this);
 
-        // Store debug info in SharedPreferences so it can be read when app starts
-        StringBuilder debugLog = new StringBuilder();
-        debugLog.append("onMessageReceived at ").append(System.currentTimeMillis()).append("\n");
-        debugLog.append("Data: ").append(remoteMessage.getData()).append("\n");
+        // FREEGLE: FCM can deliver the same message more than once; drop repeats before any
+        // rendering or bridge work.
+        if (!SeenMessageIds.markSeen(this, remoteMessage.getMessageId())) {
+            PushLog.d("MessagingService", "Dropping duplicate message: ", remoteMessage.getMessageId());
+            PushMetrics.count(PushMetrics.Outcome.DUPLICATE);
+            return;
+        }
+        Map<String, String> msgdata = remoteMessage.getData();
 
-        Log.d("MessagingService", "onMessageReceived called");
-        Log.d("MessagingService", "Message data: " + remoteMessage.getData());
+        // Store debug info in the background push log so it can be read when app starts.
+        // Not built when logLevel is none, and the payload itself only when logPayloads is set.
+        StringBuilder debugLog = null;
+        if (PushLog.backgroundLogEnabled()) {
+            debugLog = new StringBuilder(128);
+            debugLog.append("onMessageReceived at ").append(System.currentTimeMillis()).append("\n");
+            if (PushLog.logsPayloads()) {
+                debugLog.append("Data: ").append(PushLog.payload(msgdata)).append("\n");
+            } else if (msgdata != null) {
+                debugLog.append("notId: ").append(msgdata.get("notId")).append(", fields: ").append(msgdata.size()).append("\n");
+            }
+        }
 
-        // FREEGLE: Try to notify plugin first (handles JS layer + notification display)
-        boolean pluginHandled = PushNotificationsPlugin.sendRemoteMessage(remoteMessage);
-        debugLog.append("Plugin handled: ").append(pluginHandled).append("\n");
-        Log.d("MessagingService", "Plugin handled: " + pluginHandled);
+        PushLog.d("MessagingService", "onMessageReceived called");
+        if (PushLog.logsPayloads()) {
+            PushLog.d("MessagingService", "Message data: ", PushLog.payload(msgdata));
+        }
 
-        // If plugin not available (app not running), show notification directly
-        // This ensures notifications appear even when app is killed
-        if (!pluginHandled) {
-            Map<String, String> msgdata = remoteMessage.getData();
-            if (msgdata != null) {
-                debugLog.append("Calling NotificationHelper directly\n");
-                Log.d("MessagingService", "Calling NotificationHelper directly");
-                boolean shown = NotificationHelper.createAndShowNotification(this, msgdata);
-                debugLog.append("Notification shown: ").append(shown).append("\n");
-                Log.d("MessagingService", "Notification shown: " + shown);
-            } else {
+        // FREEGLE: The payload is parsed once here and shared by the JS event and the render
+        long validationStart = PushMetrics.start();
+        PushPayload payload = PushPayload.from(remoteMessage.getMessageId(), msgdata);
+        PushMetrics.record(PushMetrics.Stage.VALIDATION, validationStart);
+
+        // FREEGLE: Try to notify plugin first (handles JS layer + queues the notification render)
+        boolean pluginHandled = PushNotificationsPlugin.sendRemoteMessage(this, remoteMessage, payload);
+        if (debugLog != null) {
+            debugLog.append("Plugin handled: ").append(pluginHandled).append("\n");
+        }
+        PushLog.d("MessagingService", "Plugin handled: ", pluginHandled);
+
+        if (msgdata != null) {
+            NotificationRenderPipeline pipeline = NotificationRenderPipeline.get(this);
+            // If plugin not available (app not running), render the notification ourselves.
+            // This ensures notifications appear even when app is killed
+            if (!pluginHandled) {
+                if (debugLog != null) {
+                    debugLog.append("Queuing render directly\n");
+                }
+                PushLog.d("MessagingService", "Queuing render directly");
+                pipeline.submit(payload);
+            }
+            // Rendering happens on the pipeline's workers; stay alive for it up to our budget,
+            // then leave the rest to an expedited job rather than risk it being cut off.
+            // A digest only gets a short wait, so the next message (maybe a chat) isn't held up.
+            NotificationRenderPipeline.Lane lane = NotificationRenderPipeline.Lane.of(payload);
+            Boolean shown = pipeline.awaitOrHandOff(payload, lane.serviceBudgetMs);
+            if (debugLog != null) {
+                debugLog.append("Notification shown: ").append(shown == null ? "deferred to job" : shown).append("\n");
+            }
+            PushLog.d("MessagingService", "Notification shown: ", shown);
+            // A post held back for coalescing or rate limiting goes out on the poster's own
+            // thread, kept alive by its flush job; don't wait for it here, so the next message
+            // can join the backlog.
+        } else {
+            if (debugLog != null) {
                 debugLog.append("Message data is null\n");
-                Log.w("MessagingService", "Message data is null");
             }
+            PushLog.w("MessagingService", "Message data is null");
         }
 
-        // Save debug log to SharedPreferences
-        try {
-            SharedPreferences prefs = getSharedPreferences("push_debug", MODE_PRIVATE);
-            String existing = prefs.getString("log", "");
-            prefs.edit().putString("log", existing + debugLog.toString() + "---\n").apply();
-        } catch (Exception e) {
-            Log.e("MessagingService", "Failed to save debug log", e);
+        // Save debug log so it can be read when app starts
+        if (debugLog != null) {
+            BackgroundPushLog.append(this, debugLog.toString());
         }
+        PushMetrics.record(PushMetrics.Stage.RECEIVE, receiveStart);
     }
 
     @Override
@@ -2,13 +2,11 @@
 
 package com.capacitorjs.plugins.pushnotifications;
 
-import android.app.NotificationManager;
 import android.app.RemoteInput;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginHandle;
 
@@ -28,33 +26,28 @@ public class NotificationActionReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         String action = intent.getAction();
-        Log.d("NotificationAction", "Action received: " + action);
+        PushLog.d("NotificationAction", "Action received: ", action);
 
         if (action == null) return;
 
-        // Get notification data from intent
+        // The payload was validated when the notification was built; copy it straight to JSON
         Bundle notificationData = intent.getBundleExtra(EXTRA_NOTIFICATION_DATA);
         int notificationId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0);
-
-        // Cancel the notification
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        if (notificationManager != null) {
-            notificationManager.cancel(notificationId);
-        }
+        String chatId = null;
 
         // Build the action result
         JSObject actionJson = new JSObject();
         JSObject notificationJson = new JSObject();
         JSObject dataObject = new JSObject();
 
-        // Copy notification data to JSON
         if (notificationData != null) {
             for (String key : notificationData.keySet()) {
-                Object value = notificationData.get(key);
+                String value = notificationData.getString(key);
                 if (value != null) {
-                    dataObject.put(key, value.toString());
+                    dataObject.put(key, value);
                 }
             }
+            chatId = notificationData.getString("chatid");
         }
         notificationJson.put("data", dataObject);
 
@@ -71,13 +64,20 @@ public class NotificationActionReceiver extends BroadcastReceiver {
 
             actionJson.put("actionId", "reply");
             actionJson.put("inputValue", replyText);
-            Log.d("NotificationAction", "Reply action with text: " + replyText);
+            PushLog.d("NotificationAction", "Reply action with text: ", replyText);
+
+            // Show the reply in the conversation; if that isn't possible just dismiss it
+            if (!NotificationHelper.showReply(context, notificationId, chatId, replyText)) {
+                dismiss(context, notificationId);
+            }
         } else if (ACTION_MARK_READ.equals(action)) {
             actionJson.put("actionId", "mark_read");
-            Log.d("NotificationAction", "Mark read action");
+            PushLog.d("NotificationAction", "Mark read action");
+            dismiss(context, notificationId);
         } else if (ACTION_VIEW.equals(action)) {
             actionJson.put("actionId", "view");
-            Log.d("NotificationAction", "View action");
+            PushLog.d("NotificationAction", "View action");
+            dismiss(context, notificationId);
         } else {
             // Unknown action
             return;
@@ -90,9 +90,18 @@ public class NotificationActionReceiver extends BroadcastReceiver {
         if (pushPlugin != null) {
             pushPlugin.sendActionPerformed(actionJson);
         } else {
-            Log.w("NotificationAction", "PushNotificationsPlugin not available, storing action for later");
-            // Store the action to be processed when app starts
-            PushNotificationsPlugin.pendingAction = actionJson;
+            PushLog.w("NotificationAction", "PushNotificationsPlugin not available, storing action for later");
+            // Store the action on disk to be replayed when app starts
+            PendingActionStore.append(context, actionJson);
         }
     }
+
+    /**
+     * Cancel the notification, and any update to it still waiting to be posted, and forget
+     * its chat history.
+     */
+    private static void dismiss(Context context, int notificationId) {
+        NotificationPoster.get(context).cancel(notificationId);
+        NotificationHelper.clearChat(context, notificationId);
+    }
 }
@@ -0,0 +1,62 @@
+/* FREEGLE: Job that keeps the process alive while NotificationPoster drains held-back posts */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+/**
+ * Scheduled by NotificationPoster when it starts holding posts back. Once onMessageReceived
+ * returns nothing else keeps the process up, so the job's lifetime does until the poster has
+ * drained (or FLUSH_JOB_MAX_MS passes). It isn't persisted: the held-back notifications only
+ * exist in this process.
+ *
+ * If the system stops the job, the worker is interrupted and exits without reporting back,
+ * and the job is rescheduled by returning true from onStopJob; the poster still counts it as
+ * scheduled, so it doesn't schedule (and so restart) the same job id itself.
+ */
+public class NotificationFlushJobService extends JobService {
+
+    private static final String TAG = "NotificationFlushJob";
+
+    private Thread worker;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        NotificationPoster poster = NotificationPoster.get(this);
+        int run = poster.flushJobStarted();
+        Thread thread = new Thread(
+            () -> {
+                boolean idle;
+                try {
+                    idle = poster.awaitIdle(NotificationPoster.FLUSH_JOB_MAX_MS);
+                } catch (InterruptedException e) {
+                    return; // stopped; the rescheduled job takes over
+                }
+                if (Thread.interrupted()) {
+                    return;
+                }
+                PushLog.d(TAG, "Held-back posts flushed: ", idle);
+                jobFinished(params, false);
+                poster.flushJobFinished(run);
+            },
+            "NotificationFlushJob"
+        );
+        synchronized (this) {
+            worker = thread;
+        }
+        thread.start();
+        return true; // still working on the background thread
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        synchronized (this) {
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+        return true; // reschedule: the posts it was waiting for may still be held back
+    }
+}
@@ -6,27 +6,23 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.app.Person;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
+import android.service.notification.StatusBarNotification;
+import androidx.annotation.RequiresApi;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import org.json.JSONArray;
+import java.util.Set;
 import org.json.JSONException;
 
 /**
@@ -56,172 +52,394 @@ public class NotificationHelper {
 
     private static final String TAG = "NotificationHelper";
 
+    private static final int COLLAGE_MAX_PHOTOS = 4;
+    private static final int COLLAGE_MAX_CANDIDATES = 6; // spares, only fetched when a photo fails
+    private static final long COLLAGE_DEADLINE_MS = 6000;
+    private static final int COLLAGE_WIDTH = 1024, COLLAGE_HEIGHT = 512, COLLAGE_GAP = 6;
+    // Part of the rendered-collage cache key: bump the version whenever the drawing changes.
+    private static final String COLLAGE_LAYOUT = "v1:" + COLLAGE_WIDTH + "x" + COLLAGE_HEIGHT + ":" + COLLAGE_GAP;
+
+    static final String CHAT_GROUP_KEY = "com.capacitorjs.plugins.pushnotifications.CHATS";
+    /** Notification id of the chats summary; notIds from the server are positive. */
+    static final int CHAT_SUMMARY_ID = -0x4653;
+    private static final int CHAT_SUMMARY_MAX_LINES = 6;
+
     /**
      * Create and display a notification from FCM data payload.
      * Returns true if notification was created successfully, false otherwise.
      */
     public static boolean createAndShowNotification(Context context, Map<String, String> msgdata) {
         if (msgdata == null) {
-            Log.w(TAG, "Notification data is null");
+            PushLog.w(TAG, "Notification data is null");
+            PushMetrics.count(PushMetrics.Outcome.ERROR);
             return false;
         }
+        return createAndShowNotification(context, PushPayload.from(null, msgdata));
+    }
+
+    /**
+     * Create and display a notification from an already parsed payload.
+     */
+    static boolean createAndShowNotification(Context context, PushPayload payload) {
+        // A cancel carries no notification of its own, so none of the checks below apply
+        if (payload.validity == PushPayloadParser.Validity.CANCEL) {
+            return cancelMatching(context, payload);
+        }
 
         // FREEGLE: Only process notifications WITH channel_id (new app behavior)
         // Legacy notifications (no channel_id) are ignored to prevent duplicates
-        String channelIdCheck = msgdata.get("channel_id");
-        if (channelIdCheck == null || channelIdCheck.isEmpty()) {
-            Log.d(TAG, "Ignoring legacy notification without channel_id");
+        PushPayloadParser.Validity validity = payload.validity;
+        if (validity == PushPayloadParser.Validity.LEGACY) {
+            PushLog.d(TAG, "Ignoring legacy notification without channel_id");
+            PushMetrics.count(PushMetrics.Outcome.LEGACY_IGNORED);
             return false;
         }
 
         try {
-            // Extract required fields with null checking
-            String titleStr = msgdata.get("title");
-            String messageStr = msgdata.get("message");
-            String countStr = msgdata.get("count");
-            String notIdStr = msgdata.get("notId");
-
-            if (titleStr == null || messageStr == null || countStr == null || notIdStr == null) {
-                Log.e(TAG, "Missing required fields in notification payload");
+            // Required fields were null-checked and count / notId parsed when the payload was built
+            if (validity == PushPayloadParser.Validity.MISSING_FIELDS) {
+                PushLog.e(TAG, "Missing required fields in notification payload");
+                PushMetrics.count(PushMetrics.Outcome.MISSING_FIELDS);
+                return false;
+            }
+            if (validity == PushPayloadParser.Validity.MALFORMED) {
+                PushLog.e(TAG, "count or notId is not a number in notification payload");
+                PushMetrics.count(PushMetrics.Outcome.ERROR);
                 return false;
             }
 
-            String title = titleStr;
-            String message = messageStr;
-            int count = Integer.parseInt(countStr);
-            int notId = Integer.parseInt(notIdStr);
+            String title = payload.title;
+            String message = payload.message;
+            int count = payload.count;
+            int notId = payload.notId;
 
             NotificationManager notificationManager = 
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             
             if (notificationManager == null) {
-                Log.e(TAG, "NotificationManager is null");
+                PushLog.e(TAG, "NotificationManager is null");
+                PushMetrics.count(PushMetrics.Outcome.ERROR);
                 return false;
             }
 
             // Handle clear all notifications
+            NotificationPoster poster = NotificationPoster.get(context);
             if (count == 0) {
-                notificationManager.cancelAll();
+                poster.cancelAll();
+                ChatHistoryStore.clearAll(context);
+                PushMetrics.count(PushMetrics.Outcome.CLEARED);
                 return true;
             }
 
-            // Get app metadata and resources
-            Bundle bundle = null;
-            Resources resources = null;
-            int appIconResId = 0;
-            
-            try {
-                String packageName = context.getPackageName();
-                ApplicationInfo applicationInfo = context.getPackageManager()
-                    .getApplicationInfo(packageName, PackageManager.GET_META_DATA);
-                bundle = applicationInfo.metaData;
-                resources = context.getPackageManager().getResourcesForApplication(packageName);
-                appIconResId = applicationInfo.icon;
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.w(TAG, "Package not found: " + context.getPackageName());
-            }
-
-            // Get notification icon
-            int pushIcon = android.R.drawable.ic_dialog_info;
-            if (bundle != null && bundle.getInt("com.google.firebase.messaging.default_notification_icon") != 0) {
-                pushIcon = bundle.getInt("com.google.firebase.messaging.default_notification_icon");
-            }
+            // App metadata, icons and launch activity are looked up once per process
+            long environmentStart = PushMetrics.start();
+            PushEnvironment env = PushEnvironment.get(context);
+            PushMetrics.record(PushMetrics.Stage.ENVIRONMENT, environmentStart);
 
             // Create intent to open app
-            Intent intent;
-            try {
-                intent = new Intent(context, Class.forName(context.getPackageName() + ".MainActivity"));
-            } catch (ClassNotFoundException e) {
-                Log.e(TAG, "MainActivity class not found", e);
+            if (env.launchActivity == null) {
+                PushLog.e(TAG, "MainActivity class not found");
+                PushMetrics.count(PushMetrics.Outcome.ERROR);
                 return false;
             }
+            Intent intent = new Intent(context, env.launchActivity);
             intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
             PendingIntent pendingIntent = PendingIntent.getActivity(
                 context, notId, intent, PendingIntent.FLAG_IMMUTABLE
             );
 
             // Get channel_id, category, image, and timestamp from payload
-            String notifChannelId = msgdata.get("channel_id");
+            String notifChannelId = payload.channelId;
             if (notifChannelId == null || notifChannelId.isEmpty()) {
                 notifChannelId = "PushDefaultForeground"; // Fallback
             }
-            String category = msgdata.get("category");
-            String imageUrl = msgdata.get("image");
-            String timestampStr = msgdata.get("timestamp");
+            String category = payload.category;
+            String imageUrl = payload.image;
 
             // Build notification
             Notification.Builder builder = new Notification.Builder(context, notifChannelId)
                 .setContentTitle(title)
                 .setContentText(message)
-                .setSmallIcon(pushIcon)
+                .setSmallIcon(env.smallIconResId)
                 .setPriority(Notification.PRIORITY_DEFAULT)
                 .setAutoCancel(true)
                 .setColor(Color.GREEN)
                 .setContentIntent(pendingIntent);
 
+            // Keep the payload with the notification, for getDeliveredNotifications and cancels;
+            // the action intents below carry this same Bundle
+            Bundle payloadExtras = new Bundle();
+            payload.copyTo(payloadExtras::putString);
+            Bundle extras = new Bundle();
+            extras.putBundle(DeliveredNotificationIndex.EXTRA_PAYLOAD, payloadExtras);
+            builder.addExtras(extras);
+
             // Set timestamp if available - OS will display it automatically
-            if (timestampStr != null && !timestampStr.isEmpty()) {
-                try {
-                    long timestamp = Long.parseLong(timestampStr);
-                    builder.setWhen(timestamp * 1000);  // Convert to milliseconds
-                    builder.setShowWhen(true);
-                } catch (NumberFormatException e) {
-                    Log.w(TAG, "Invalid timestamp: " + timestampStr);
-                }
+            long sentAt = System.currentTimeMillis();
+            if (payload.timestampMs == PushPayload.INVALID_TIMESTAMP) {
+                PushLog.w(TAG, "Invalid timestamp: ", payload.get("timestamp"));
+            } else if (payload.timestampMs > 0) {
+                sentAt = payload.timestampMs;
+                builder.setWhen(sentAt);
+                builder.setShowWhen(true);
+            }
+
+            // Add action buttons based on category
+            PushNotificationsPlugin.addNotificationActions(context, builder, payload, payloadExtras);
+
+            // FREEGLE: A chat message shows the last few messages of its chat (MessagingStyle),
+            // and chat notifications are grouped under one summary.
+            boolean chatMessage = PushNotificationsPlugin.CATEGORY_CHAT_MESSAGE.equals(category)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+            if (chatMessage) {
+                String sender = payload.sender;
+                ChatHistoryStore.Chat chat = ChatHistoryStore.append(
+                    context,
+                    ChatHistoryStore.chatKey(payload.chatId, notId),
+                    notId,
+                    title,
+                    notifChannelId,
+                    new ChatHistoryStore.Message(sentAt, sender != null && !sender.isEmpty() ? sender : title, message, false)
+                );
+                builder.setStyle(chatStyle(chat)).setGroup(CHAT_GROUP_KEY);
+            }
+
+            // FREEGLE: In progressive mode, show the text straight away and fill in images after.
+            // The first post alerts as normal; the image re-post is marked onlyAlertOnce so it
+            // updates silently. (Setting onlyAlertOnce on the first post would also silence a
+            // genuinely new chat message that reuses the notId of one still on screen.)
+            boolean newPosts = PushNotificationsPlugin.CATEGORY_NEW_POSTS.equals(category);
+            if (env.progressiveImages && payload.hasImages()) {
+                long notifyStart = PushMetrics.start();
+                poster.post(notId, builder.build());
+                PushMetrics.record(PushMetrics.Stage.NOTIFY, notifyStart);
+                builder.setOnlyAlertOnce(true);
+                PushLog.d(TAG, "Text notification displayed, loading images: ", notId);
             }
 
             // Set large icon (profile image / first post photo)
-            setLargeIcon(builder, resources, appIconResId, imageUrl);
+            setLargeIcon(context, builder, env, imageUrl, largeIconRole(category, count));
 
             // FREEGLE: Apply rich style for NEW_POSTS category (InboxStyle or BigPictureStyle)
             // Falls back to base single-line notification if fields are missing or parsing fails.
-            if (PushNotificationsPlugin.CATEGORY_NEW_POSTS.equals(category)) {
-                applyNewPostsStyle(builder, msgdata, count, imageUrl);
+            if (newPosts) {
+                long styleStart = PushMetrics.start();
+                applyNewPostsStyle(context, builder, payload);
+                PushMetrics.record(PushMetrics.Stage.STYLE, styleStart);
             }
 
-            // Add action buttons based on category
-            PushNotificationsPlugin.addNotificationActions(context, builder, category, msgdata, notId);
-
-            // Show notification
-            notificationManager.notify(notId, builder.build());
-            Log.d(TAG, "Notification displayed successfully: " + notId);
+            // Show notification (coalesced with other updates to notId and rate limited)
+            long notifyStart = PushMetrics.start();
+            poster.post(notId, builder.build());
+            PushMetrics.record(PushMetrics.Stage.NOTIFY, notifyStart);
+            if (chatMessage) {
+                updateChatSummary(context, Collections.singleton(notId));
+            }
+            PushMetrics.count(PushMetrics.Outcome.SHOWN);
+            PushLog.d(TAG, "Notification displayed successfully: ", notId);
             return true;
 
         } catch (Exception e) {
-            Log.e(TAG, "Error creating notification: " + e.getMessage(), e);
+            PushLog.e(TAG, "Error creating notification", e);
+            PushMetrics.count(PushMetrics.Outcome.ERROR);
+            return false;
+        }
+    }
+
+    /**
+     * Remove just the notifications a CANCEL payload names, e.g. one chat after it was read
+     * on another device, where count == 0 would clear everything. They are found through
+     * DeliveredNotificationIndex (and any post still waiting in NotificationPoster) rather
+     * than by walking getActiveNotifications(). The chat history of a cancelled chat goes too.
+     */
+    static boolean cancelMatching(Context context, PushPayload payload) {
+        NotificationManager notificationManager =
+            (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager == null) {
+            PushLog.e(TAG, "NotificationManager is null");
+            PushMetrics.count(PushMetrics.Outcome.ERROR);
+            return false;
+        }
+        DeliveredNotificationIndex.Filter filter = new DeliveredNotificationIndex.Filter();
+        filter.chatId = payload.cancelChatId;
+        filter.category = payload.cancelCategory;
+        filter.group = payload.cancelGroup;
+
+        NotificationPoster poster = NotificationPoster.get(context);
+        Set<Integer> cancelled = new HashSet<>(poster.cancelPending(filter));
+        for (DeliveredNotificationIndex.Entry entry : DeliveredNotificationIndex.query(notificationManager, filter, false)) {
+            if (entry.tag == null) {
+                poster.cancel(entry.id);
+                cancelled.add(entry.id);
+            } else {
+                notificationManager.cancel(entry.tag, entry.id);
+                DeliveredNotificationIndex.removed(entry.tag, entry.id);
+            }
+        }
+
+        // Also forget a cancelled chat that is no longer on screen, e.g. swiped away
+        String chatKey = payload.cancelChatId != null ? ChatHistoryStore.chatKey(payload.cancelChatId, 0) : null;
+        for (ChatHistoryStore.Chat chat : ChatHistoryStore.chats(context)) {
+            if (cancelled.contains(chat.notId) || chat.key.equals(chatKey)) {
+                ChatHistoryStore.clearNotification(context, chat.notId);
+            }
+        }
+        updateChatSummary(context, Collections.emptySet());
+
+        PushLog.d(TAG, "Cancelled notifications: ", cancelled.size());
+        PushMetrics.count(PushMetrics.Outcome.CANCELLED);
+        return true;
+    }
+
+    /**
+     * Add an inline reply to the chat shown in notification notId and re-post it, so the
+     * conversation updates (and the reply spinner stops) without starting the app.
+     * Returns false if the notification is no longer showing or this Android can't do it,
+     * in which case the caller should just dismiss it.
+     */
+    static boolean showReply(Context context, int notId, String chatId, String text) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || text == null || text.isEmpty()) {
             return false;
         }
+        NotificationManager notificationManager =
+            (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        Notification current = null;
+        for (StatusBarNotification sbn : notificationManager.getActiveNotifications()) {
+            if (sbn.getId() == notId && sbn.getTag() == null) {
+                current = sbn.getNotification();
+            }
+        }
+        if (current == null) {
+            return false;
+        }
+        ChatHistoryStore.Chat chat = ChatHistoryStore.append(
+            context,
+            ChatHistoryStore.chatKey(chatId, notId),
+            notId,
+            null,
+            null,
+            new ChatHistoryStore.Message(System.currentTimeMillis(), null, text, true)
+        );
+        Notification updated = Notification.Builder.recoverBuilder(context, current)
+            .setStyle(chatStyle(chat))
+            .setOnlyAlertOnce(true)
+            .build();
+        NotificationPoster.get(context).post(notId, updated);
+        return true;
+    }
+
+    /**
+     * Forget the chat history for notification notId, once it has been read or removed.
+     */
+    static void clearChat(Context context, int notId) {
+        ChatHistoryStore.clearNotification(context, notId);
+        updateChatSummary(context, Collections.emptySet());
+    }
+
+    @RequiresApi(Build.VERSION_CODES.P)
+    private static Notification.MessagingStyle chatStyle(ChatHistoryStore.Chat chat) {
+        Notification.MessagingStyle style = new Notification.MessagingStyle(new Person.Builder().setName("You").build());
+        for (ChatHistoryStore.Message message : chat.messages) {
+            // A null person is the user themself
+            Person from = message.self ? null : new Person.Builder().setName(message.sender).setKey(message.sender).build();
+            style.addMessage(new Notification.MessagingStyle.Message(message.text, message.time, from));
+        }
+        return style;
+    }
+
+    /**
+     * Post, refresh or remove the summary of the chat notifications on screen: it's needed
+     * once two or more are showing. justPosted are chat notifications just posted, which may
+     * not be visible yet.
+     */
+    private static void updateChatSummary(Context context, Set<Integer> justPosted) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        NotificationManager notificationManager =
+            (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        Set<Integer> showing = new HashSet<>(justPosted);
+        for (StatusBarNotification sbn : notificationManager.getActiveNotifications()) {
+            showing.add(sbn.getId());
+        }
+        StringBuilder titles = new StringBuilder();
+        Notification.InboxStyle style = new Notification.InboxStyle();
+        int lines = 0;
+        ChatHistoryStore.Chat newest = null;
+        for (ChatHistoryStore.Chat chat : ChatHistoryStore.chats(context)) {
+            ChatHistoryStore.Message last = chat.last();
+            if (!showing.contains(chat.notId) || last == null) {
+                continue;
+            }
+            newest = newest == null ? chat : newest;
+            if (lines++ < CHAT_SUMMARY_MAX_LINES) {
+                style.addLine(chat.title + ": " + (last.self ? "You: " : "") + last.text);
+            }
+            titles.append(titles.length() == 0 ? "" : ", ").append(chat.title);
+        }
+
+        NotificationPoster poster = NotificationPoster.get(context);
+        if (lines < 2) {
+            poster.cancel(CHAT_SUMMARY_ID);
+            return;
+        }
+        PushEnvironment env = PushEnvironment.get(context);
+        if (env.launchActivity == null) {
+            return;
+        }
+        Intent intent = new Intent(context, env.launchActivity);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        String channelId = newest.channelId != null ? newest.channelId : "PushDefaultForeground";
+        Notification summary = new Notification.Builder(context, channelId)
+            .setContentTitle(lines + " chats")
+            .setContentText(titles)
+            .setSmallIcon(env.smallIconResId)
+            .setColor(Color.GREEN)
+            .setStyle(style)
+            .setGroup(CHAT_GROUP_KEY)
+            .setGroupSummary(true)
+            .setGroupAlertBehavior(Notification.GROUP_ALERT_CHILDREN)
+            .setAutoCancel(true)
+            .setContentIntent(PendingIntent.getActivity(context, CHAT_SUMMARY_ID, intent, PendingIntent.FLAG_IMMUTABLE))
+            .build();
+        poster.post(CHAT_SUMMARY_ID, summary);
     }
 
     /**
      * Set large icon from URL or fallback to app icon.
      */
-    private static void setLargeIcon(Notification.Builder builder, Resources resources, 
-                                     int appIconResId, String imageUrl) {
+    private static void setLargeIcon(Context context, Notification.Builder builder, PushEnvironment env,
+                                     String imageUrl, NotificationImageDecoder.Role role) {
         // Try to download image from URL if provided
-        if (imageUrl != null && !imageUrl.isEmpty() && imageUrl.startsWith("http")) {
+        if (PushPayloadParser.isHttpUrl(imageUrl)) {
             try {
-                Bitmap iconBitmap = downloadImage(imageUrl);
+                Bitmap iconBitmap = NotificationImageLoader.get(context).load(imageUrl, role);
                 if (iconBitmap != null) {
                     builder.setLargeIcon(iconBitmap);
                     return;
                 }
             } catch (Exception e) {
-                Log.w(TAG, "Failed to load image from URL, falling back to app icon");
+                PushLog.w(TAG, "Failed to load image from URL, falling back to app icon");
             }
         }
 
         // Fall back to app icon
-        if (resources != null && appIconResId != 0) {
-            try {
-                Bitmap iconBitmap = BitmapFactory.decodeResource(resources, appIconResId);
-                if (iconBitmap != null) {
-                    builder.setLargeIcon(iconBitmap);
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to load app icon", e);
-            }
+        Bitmap appIcon = env.getFallbackIcon();
+        if (appIcon != null) {
+            builder.setLargeIcon(appIcon);
+        }
+    }
+
+    /**
+     * Decode size to use for the large icon. A NEW_POSTS "image" is normally also the
+     * BigPictureStyle picture (count == 1) or the first collage cell (count >= 2), so the
+     * icon asks for that role and the one decoded bitmap is shared by both uses.
+     */
+    private static NotificationImageDecoder.Role largeIconRole(String category, int count) {
+        if (PushNotificationsPlugin.CATEGORY_NEW_POSTS.equals(category)) {
+            return count == 1 ? NotificationImageDecoder.Role.BIG_PICTURE : NotificationImageDecoder.Role.COLLAGE_CELL;
         }
+        return NotificationImageDecoder.Role.LARGE_ICON;
     }
 
     /**
@@ -239,27 +457,23 @@ public class NotificationHelper {
      * FUTURE-PROOFING: If new fields are added to NEW_POSTS payloads in future,
      * add them here as optional with null checks following the same defensive pattern.
      */
-    static void applyNewPostsStyle(Notification.Builder builder, Map<String, String> msgdata,
-                                   int count, String imageUrl) {
+    static void applyNewPostsStyle(Context context, Notification.Builder builder, PushPayload payload) {
         try {
-            String title   = msgdata.get("title");
-            String summary = msgdata.get("summary");
-            String linesJson = msgdata.get("lines");
-
-            int moreCount = 0;
-            String moreCountStr = msgdata.get("moreCount");
-            if (moreCountStr != null && !moreCountStr.isEmpty()) {
-                try {
-                    moreCount = Integer.parseInt(moreCountStr);
-                } catch (NumberFormatException e) {
-                    Log.w(TAG, "NEW_POSTS: invalid moreCount value: " + moreCountStr);
-                }
+            String title   = payload.title;
+            String summary = payload.summary;
+            int count = payload.count;
+            String imageUrl = payload.image;
+
+            int moreCount = payload.moreCount;
+            if (moreCount == PushPayloadParser.INVALID_COUNT) {
+                PushLog.w(TAG, "NEW_POSTS: invalid moreCount value: ", payload.get("moreCount"));
+                moreCount = 0;
             }
 
             if (count >= 2) {
                 // Prefer a photo collage of the top posts (photo-first design). Falls back to
                 // the InboxStyle text list when fewer than two posts have a usable photo.
-                Bitmap collage = buildCollage(msgdata.get("images"));
+                Bitmap collage = buildCollage(context, payload);
                 if (collage != null) {
                     Notification.BigPictureStyle pictureStyle = new Notification.BigPictureStyle()
                         .bigPicture(collage)
@@ -268,7 +482,7 @@ public class NotificationHelper {
                         pictureStyle.setBigContentTitle(title);
                     }
                     // Item names go in the expanded summary line beneath the collage.
-                    String namesSummary = msgdata.get("message");
+                    String namesSummary = payload.message;
                     if (namesSummary == null || namesSummary.isEmpty()) {
                         namesSummary = summary;
                     }
@@ -276,7 +490,7 @@ public class NotificationHelper {
                         pictureStyle.setSummaryText(namesSummary);
                     }
                     builder.setStyle(pictureStyle);
-                    Log.d(TAG, "NEW_POSTS: applied BigPictureStyle collage (count=" + count + ")");
+                    PushLog.d(TAG, "NEW_POSTS: applied BigPictureStyle collage, count=", count);
                     return;
                 }
 
@@ -290,19 +504,13 @@ public class NotificationHelper {
                     inboxStyle.setSummaryText(summary);
                 }
 
-                if (linesJson != null && !linesJson.isEmpty()) {
-                    try {
-                        JSONArray linesArray = new JSONArray(linesJson);
-                        for (int i = 0; i < linesArray.length(); i++) {
-                            String line = linesArray.optString(i, null);
-                            if (line != null && !line.isEmpty()) {
-                                inboxStyle.addLine(line);
-                            }
-                        }
-                    } catch (JSONException e) {
-                        Log.w(TAG, "NEW_POSTS: failed to parse lines JSON: " + e.getMessage());
-                        // Fall through — style still applied with title/summary only
+                try {
+                    for (String line : payload.lines()) {
+                        inboxStyle.addLine(line);
                     }
+                } catch (JSONException e) {
+                    PushLog.w(TAG, "NEW_POSTS: failed to parse lines JSON: ", e.getMessage());
+                    // Fall through — style still applied with title/summary only
                 }
 
                 // "+N more" trailing line when there are posts beyond the listed ones
@@ -311,12 +519,14 @@ public class NotificationHelper {
                 }
 
                 builder.setStyle(inboxStyle);
-                Log.d(TAG, "NEW_POSTS: applied InboxStyle (count=" + count + ", moreCount=" + moreCount + ")");
+                if (PushLog.isDebug()) {
+                    PushLog.d(TAG, "NEW_POSTS: applied InboxStyle (count=" + count + ", moreCount=" + moreCount + ")");
+                }
 
             } else if (count == 1) {
                 // BigPictureStyle: show the single item's photo expanded
-                if (imageUrl != null && !imageUrl.isEmpty() && imageUrl.startsWith("http")) {
-                    Bitmap bigPicture = downloadImage(imageUrl);
+                if (PushPayloadParser.isHttpUrl(imageUrl)) {
+                    Bitmap bigPicture = NotificationImageLoader.get(context).load(imageUrl, NotificationImageDecoder.Role.BIG_PICTURE);
                     if (bigPicture != null) {
                         Notification.BigPictureStyle bigPictureStyle = new Notification.BigPictureStyle()
                             .bigPicture(bigPicture)
@@ -327,17 +537,17 @@ public class NotificationHelper {
                         }
 
                         builder.setStyle(bigPictureStyle);
-                        Log.d(TAG, "NEW_POSTS: applied BigPictureStyle (count=1)");
+                        PushLog.d(TAG, "NEW_POSTS: applied BigPictureStyle (count=1)");
                     } else {
-                        Log.w(TAG, "NEW_POSTS: BigPicture download returned null, keeping single-line style");
+                        PushLog.w(TAG, "NEW_POSTS: BigPicture download returned null, keeping single-line style");
                     }
                 } else {
-                    Log.d(TAG, "NEW_POSTS: count=1 but no image URL, keeping single-line style");
+                    PushLog.d(TAG, "NEW_POSTS: count=1 but no image URL, keeping single-line style");
                 }
             }
         } catch (Exception e) {
             // Never crash — base single-line notification is already built
-            Log.e(TAG, "NEW_POSTS: unexpected error applying rich style, falling back: " + e.getMessage(), e);
+            PushLog.e(TAG, "NEW_POSTS: unexpected error applying rich style, falling back", e);
         }
     }
 
@@ -349,59 +559,64 @@ public class NotificationHelper {
      * Returns a single tiled bitmap (mosaic laid out in a 2:1 frame), or null when fewer
      * than two photos are available — in which case the caller falls back to InboxStyle text.
      * Up to 4 photos are used; extras are ignored (the "+N more" count already conveys the rest).
+     *
+     * The first COLLAGE_MAX_PHOTOS photos are downloaded in parallel under a single
+     * COLLAGE_DEADLINE_MS budget, with a spare URL tried only when one of them fails; whatever
+     * has arrived by then is composited in payload order and anything still in flight is dropped.
+     * Complete collages are kept in CollageCache, so a repeat of the same "images" list is
+     * served without any downloads or drawing.
      */
-    private static Bitmap buildCollage(String imagesJson) {
-        if (imagesJson == null || imagesJson.isEmpty()) {
-            return null;
-        }
-
-        List<Bitmap> bitmaps = new ArrayList<>();
+    private static Bitmap buildCollage(Context context, PushPayload payload) {
+        List<String> urls;
         try {
-            JSONArray urls = new JSONArray(imagesJson);
-            for (int i = 0; i < urls.length() && bitmaps.size() < 4; i++) {
-                String url = urls.optString(i, null);
-                if (url != null && url.startsWith("http")) {
-                    Bitmap b = downloadImage(url);
-                    if (b != null) {
-                        bitmaps.add(b);
-                    }
-                }
-            }
+            urls = payload.imageUrls(COLLAGE_MAX_CANDIDATES);
         } catch (JSONException e) {
-            Log.w(TAG, "NEW_POSTS: failed to parse images JSON: " + e.getMessage());
+            PushLog.w(TAG, "NEW_POSTS: failed to parse images JSON: ", e.getMessage());
             return null;
         }
 
+        if (urls.size() < 2) {
+            return null; // not enough photos for a collage — caller falls back to text list
+        }
+
+        CollageCache collageCache = CollageCache.get(context);
+        String cacheKey = CollageCache.key(urls, COLLAGE_LAYOUT);
+        Bitmap cached = collageCache.get(cacheKey);
+        if (cached != null) {
+            PushLog.d(TAG, "NEW_POSTS: collage served from cache");
+            return cached;
+        }
+
+        List<Bitmap> bitmaps = NotificationImageLoader.get(context)
+            .loadAll(urls, COLLAGE_MAX_PHOTOS, NotificationImageDecoder.Role.COLLAGE_CELL, COLLAGE_DEADLINE_MS);
+        // Only remember collages where every photo we wanted arrived; a partial one
+        // (slow server, transient error) should be retried next time.
+        boolean complete = bitmaps.size() == Math.min(urls.size(), COLLAGE_MAX_PHOTOS);
+
         int n = bitmaps.size();
         if (n < 2) {
             return null; // not enough photos for a collage — caller falls back to text list
         }
 
-        final int W = 1024, H = 512, gap = 6;
+        long collageStart = PushMetrics.start();
+        final int W = COLLAGE_WIDTH, H = COLLAGE_HEIGHT, gap = COLLAGE_GAP;
         Bitmap out = Bitmap.createBitmap(W, H, Bitmap.Config.ARGB_8888);
         Canvas canvas = new Canvas(out);
         canvas.drawColor(Color.WHITE);
         Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
 
-        if (n == 2) {
-            int half = (W - gap) / 2;
-            drawCropped(canvas, bitmaps.get(0), new Rect(0, 0, half, H), paint);
-            drawCropped(canvas, bitmaps.get(1), new Rect(half + gap, 0, W, H), paint);
-        } else if (n == 3) {
-            int half = (W - gap) / 2;
-            int rowH = (H - gap) / 2;
-            drawCropped(canvas, bitmaps.get(0), new Rect(0, 0, half, H), paint);
-            drawCropped(canvas, bitmaps.get(1), new Rect(half + gap, 0, W, rowH), paint);
-            drawCropped(canvas, bitmaps.get(2), new Rect(half + gap, rowH + gap, W, H), paint);
-        } else { // 4
-            int colW = (W - gap) / 2;
-            int rowH = (H - gap) / 2;
-            drawCropped(canvas, bitmaps.get(0), new Rect(0, 0, colW, rowH), paint);
-            drawCropped(canvas, bitmaps.get(1), new Rect(colW + gap, 0, W, rowH), paint);
-            drawCropped(canvas, bitmaps.get(2), new Rect(0, rowH + gap, colW, H), paint);
-            drawCropped(canvas, bitmaps.get(3), new Rect(colW + gap, rowH + gap, W, H), paint);
+        // 2 = side by side, 3 = one tall + two stacked, 4 = 2x2 grid
+        int[] cells = ImageGeometry.collageCells(n, W, H, gap);
+        for (int i = 0; i < n; i++) {
+            int c = i * 4;
+            drawCropped(canvas, bitmaps.get(i), new Rect(cells[c], cells[c + 1], cells[c + 2], cells[c + 3]), paint);
         }
 
+        PushMetrics.record(PushMetrics.Stage.COLLAGE, collageStart);
+
+        if (complete) {
+            collageCache.put(cacheKey, out);
+        }
         return out;
     }
 
@@ -413,45 +628,8 @@ public class NotificationHelper {
         if (bw <= 0 || bh <= 0) {
             return;
         }
-        float dstAspect = (float) dst.width() / dst.height();
-        float srcAspect = (float) bw / bh;
-
-        int sw, sh;
-        if (srcAspect > dstAspect) {
-            // source is relatively wider → crop its sides
-            sh = bh;
-            sw = Math.round(bh * dstAspect);
-        } else {
-            // source is relatively taller → crop top/bottom
-            sw = bw;
-            sh = Math.round(bw / dstAspect);
-        }
-        int sx = (bw - sw) / 2;
-        int sy = (bh - sh) / 2;
-        Rect srcRect = new Rect(sx, sy, sx + sw, sy + sh);
+        int[] crop = ImageGeometry.centreCrop(bw, bh, (float) dst.width() / dst.height());
+        Rect srcRect = new Rect(crop[0], crop[1], crop[2], crop[3]);
         canvas.drawBitmap(src, srcRect, dst, paint);
     }
-
-    /**
-     * Download image from URL for notification icon.
-     * Package-private so it can be reused by helpers in this package (e.g. applyNewPostsStyle).
-     */
-    static Bitmap downloadImage(String imageUrl) {
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.connect();
-            InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
-            connection.disconnect();
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Error downloading image: " + e.getMessage());
-            return null;
-        }
-    }
 }
@@ -0,0 +1,199 @@
+/* FREEGLE: Two-tier cache for notification images */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * URL-keyed cache for the images shown in notifications (chat avatars, post photos).
+ *
+ * Tier 1 is an in-memory LRU of decoded bitmaps, bounded by bitmap bytes rather than
+ * entry count. Tier 2 is a size-capped directory of the encoded response bodies in the
+ * app's cache dir, which survives the process being killed between pushes. A disk hit
+ * still has to be decoded, but skips the network entirely. Disk entries keep the
+ * response's ETag / Last-Modified and expiry so stale ones can be revalidated cheaply.
+ *
+ * One process-wide instance is shared by MessagingService and PushNotificationsPlugin.
+ */
+class NotificationImageCache {
+
+    private static final long DISK_CACHE_BYTES = 20L * 1024 * 1024;
+    private static final int MEMORY_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "notification_images";
+
+    private static NotificationImageCache instance;
+
+    private final LruCache<String, Bitmap> memory;
+    private final DiskImageStore disk;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    static synchronized NotificationImageCache get(Context context) {
+        if (instance == null) {
+            instance = new NotificationImageCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NotificationImageCache(Context context) {
+        // An eighth of the heap at most: notifications share the process with the WebView.
+        int memoryBytes = (int) Math.min(MEMORY_CACHE_MAX_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        memory = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        disk = new DiskImageStore(new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+    }
+
+    /**
+     * Decoded bitmap for url at the size role needs, or null if it isn't in memory.
+     * Bitmaps are keyed per role because each role decodes at a different sample size.
+     */
+    Bitmap getBitmap(String url, NotificationImageDecoder.Role role) {
+        Bitmap bitmap = memory.get(memoryKey(url, role));
+        if (bitmap != null) {
+            memoryHits.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    void putBitmap(String url, NotificationImageDecoder.Role role, Bitmap bitmap) {
+        if (bitmap != null) {
+            memory.put(memoryKey(url, role), bitmap);
+        }
+    }
+
+    /**
+     * A downloaded image body plus the HTTP validators needed to revalidate it.
+     */
+    static final class Entry {
+
+        // Header magic; also lets entries written by older versions be recognised and ignored.
+        private static final int MAGIC = 0x4e494331; // "NIC1"
+
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final long expiresAt;
+
+        Entry(byte[] body, String etag, String lastModified, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+
+        boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeLong(expiresAt);
+            out.writeUTF(etag != null ? etag : "");
+            out.writeUTF(lastModified != null ? lastModified : "");
+            out.writeInt(body.length);
+            out.write(body);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static Entry decode(byte[] data) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+                if (in.readInt() != MAGIC) {
+                    return null;
+                }
+                long expiresAt = in.readLong();
+                String etag = in.readUTF();
+                String lastModified = in.readUTF();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                return new Entry(body, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, expiresAt);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The disk-tier entry for url, fresh or stale, or null if there is none.
+     * Does not touch the hit/miss counters; the caller records what it did with it.
+     */
+    Entry getEntry(String url) {
+        byte[] data = disk.get(url);
+        if (data == null) {
+            return null;
+        }
+        Entry entry = Entry.decode(data);
+        if (entry == null) {
+            disk.remove(url);
+        }
+        return entry;
+    }
+
+    void putEntry(String url, Entry entry) {
+        try {
+            disk.put(url, entry.encode());
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw; nothing to do
+        }
+    }
+
+    void recordDiskHit() {
+        diskHits.incrementAndGet();
+    }
+
+    void recordRevalidated() {
+        revalidated.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    private static String memoryKey(String url, NotificationImageDecoder.Role role) {
+        return role.name() + '|' + url;
+    }
+
+    void clear() {
+        memory.evictAll();
+        disk.clear();
+    }
+
+    /**
+     * Hit/miss counters and current sizes, for diagnostics.
+     */
+    JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("revalidated", revalidated.get());
+        stats.put("misses", misses.get());
+        stats.put("memoryBytes", memory.size());
+        stats.put("memoryMaxBytes", memory.maxSize());
+        stats.put("diskBytes", disk.sizeBytes());
+        return stats;
+    }
+}
@@ -0,0 +1,121 @@
+/* FREEGLE: Downsampled, role-aware decoding of notification images */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * Decodes downloaded image bytes at the size they will actually be drawn.
+ *
+ * Post photos are often full-resolution camera images; decoding a 4000px JPEG at full size
+ * costs ~48MB of heap only to be drawn into a 64dp icon or a 512px collage cell. Instead we
+ * read the bounds first, pick the largest power-of-two inSampleSize that still covers the
+ * target for the image's Role, and (for the square large icon) decode only the centre crop.
+ */
+class NotificationImageDecoder {
+
+    private static final String TAG = "NotificationImageDecoder";
+
+    /** Responses bigger than this are not decoded (or even fully downloaded). */
+    static final int MAX_ENCODED_BYTES = 8 * 1024 * 1024;
+    /** Sources with more pixels than this are rejected from their header alone. */
+    static final long MAX_SOURCE_PIXELS = 48_000_000L;
+
+    /**
+     * Where a bitmap will be shown, and therefore how many pixels it needs.
+     */
+    enum Role {
+        /** 64dp large icon; 256px covers xxxhdpi. Shown centre-cropped to a square/circle. */
+        LARGE_ICON(256, 256, true),
+        /** BigPictureStyle picture for a single post, shown at roughly 2:1. */
+        BIG_PICTURE(1024, 512, false),
+        /** One tile of the 1024x512 NEW_POSTS collage; drawCropped does the final crop. */
+        COLLAGE_CELL(512, 512, false);
+
+        final int width;
+        final int height;
+        final boolean centreCrop;
+
+        Role(int width, int height, boolean centreCrop) {
+            this.width = width;
+            this.height = height;
+            this.centreCrop = centreCrop;
+        }
+    }
+
+    /**
+     * Decode data for role, or return null if it is not an image, is too large, or fails to decode.
+     */
+    static Bitmap decode(byte[] data, Role role) {
+        if (data == null || data.length == 0 || data.length > MAX_ENCODED_BYTES) {
+            return null;
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        int srcW = bounds.outWidth;
+        int srcH = bounds.outHeight;
+        if (srcW <= 0 || srcH <= 0) {
+            return null;
+        }
+        if ((long) srcW * srcH > MAX_SOURCE_PIXELS) {
+            if (PushLog.isLoggable(Log.WARN)) {
+                PushLog.w(TAG, "Rejecting oversized image " + srcW + "x" + srcH);
+            }
+            return null;
+        }
+
+        if (role.centreCrop) {
+            int[] crop = ImageGeometry.centreCrop(srcW, srcH, (float) role.width / role.height);
+            Bitmap cropped = decodeRegion(data, crop, role);
+            if (cropped != null) {
+                return cropped;
+            }
+            // Some formats (e.g. GIF) can't be region-decoded; fall back to a sampled full decode.
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ImageGeometry.calculateSampleSize(srcW, srcH, role.width, role.height);
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * True if data has an image header BitmapFactory understands.
+     */
+    static boolean isDecodable(byte[] data) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        return bounds.outWidth > 0 && bounds.outHeight > 0;
+    }
+
+    private static Bitmap decodeRegion(byte[] data, int[] crop, Role role) {
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = newRegionDecoder(data);
+            if (decoder == null) {
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = ImageGeometry.calculateSampleSize(crop[2] - crop[0], crop[3] - crop[1], role.width, role.height);
+            return decoder.decodeRegion(new Rect(crop[0], crop[1], crop[2], crop[3]), options);
+        } catch (Exception e) {
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(byte[] data) throws java.io.IOException {
+        // The non-deprecated overload without isShareable is API 31+.
+        return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+    }
+}
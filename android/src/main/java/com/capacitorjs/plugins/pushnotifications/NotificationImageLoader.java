@@ -0,0 +1,300 @@
+/* FREEGLE: Single-flight loader for notification images */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads notification images through NotificationImageCache, making sure each URL is
+ * fetched at most once at a time and each (URL, role) is decoded at most once at a time.
+ *
+ * A NEW_POSTS digest asks for the same photo as its large icon, its BigPictureStyle picture
+ * and often as the first collage cell, and several messages can be rendered concurrently.
+ * Callers that ask for something already in flight wait for, and share, that result instead
+ * of starting their own download or decode. Network requests go through the shared
+ * ImageHttpClient.
+ */
+class NotificationImageLoader {
+
+    private static final String TAG = "NotificationImageLoader";
+
+    // Collage photos are fetched concurrently on a small shared pool so one slow image server
+    // can't serialise the whole digest. The pool is bounded so a burst of digests can't open
+    // an unbounded number of sockets, and its threads are daemons so they never keep the
+    // process alive on their own.
+    private static final int IMAGE_FETCH_THREADS = 4;
+    // How long an image stays fresh when the server sends no Cache-Control max-age.
+    // Freegle image URLs point at immutable uploads, so a day is conservative.
+    private static final long DEFAULT_FRESHNESS_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static final AtomicInteger imageThreadCount = new AtomicInteger();
+    private static final ExecutorService IMAGE_FETCH_POOL = Executors.newFixedThreadPool(IMAGE_FETCH_THREADS, r -> {
+        Thread t = new Thread(r, "NotificationImageFetch-" + imageThreadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Prefetching is speculative, so it gets one background thread of its own and never
+    // competes with the fetch pool that notifications are waiting on.
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "NotificationImagePrefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static NotificationImageLoader instance;
+
+    private final NotificationImageCache cache;
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> inFlightFetches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<Bitmap>> inFlightDecodes = new ConcurrentHashMap<>();
+
+    static synchronized NotificationImageLoader get(Context context) {
+        if (instance == null) {
+            instance = new NotificationImageLoader(NotificationImageCache.get(context));
+        }
+        return instance;
+    }
+
+    private NotificationImageLoader(NotificationImageCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Load imageUrl decoded for role: memory cache, then disk cache, then network.
+     * Returns null if the image can't be fetched or decoded.
+     */
+    Bitmap load(String imageUrl, NotificationImageDecoder.Role role) {
+        Bitmap bitmap = cache.getBitmap(imageUrl, role);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return singleFlight(inFlightDecodes, role.name() + '|' + imageUrl, () -> {
+            // Another caller may have finished the same decode while we were queuing up.
+            Bitmap cached = cache.getBitmap(imageUrl, role);
+            if (cached != null) {
+                return cached;
+            }
+            byte[] data = loadBytes(imageUrl, true);
+            if (data == null) {
+                return null;
+            }
+            long decodeStart = PushMetrics.start();
+            Bitmap decoded = NotificationImageDecoder.decode(data, role);
+            PushMetrics.record(PushMetrics.Stage.IMAGE_DECODE, decodeStart);
+            if (decoded == null) {
+                PushLog.w(TAG, "Could not decode image: ", imageUrl);
+                return null;
+            }
+            cache.putBitmap(imageUrl, role, decoded);
+            return decoded;
+        });
+    }
+
+    /**
+     * Load up to wanted of urls concurrently on the shared fetch pool. The first wanted URLs
+     * are fetched; the ones after them are spares, each started only when an earlier load
+     * fails. Returns the bitmaps that completed within deadlineMs, in the same order as urls.
+     * Loads still running at the deadline are left to finish under ImageHttpClient's own
+     * timeouts rather than cancelled: each may be the single-flight fetch another render (a
+     * large icon of the same photo, say) is waiting on, and its result still fills the cache.
+     */
+    List<Bitmap> loadAll(List<String> urls, int wanted, NotificationImageDecoder.Role role, long deadlineMs) {
+        long deadline = SystemClock.elapsedRealtime() + deadlineMs;
+        CompletionService<Bitmap> completion = new ExecutorCompletionService<>(IMAGE_FETCH_POOL);
+        Map<Future<Bitmap>, Integer> running = new HashMap<>();
+        Bitmap[] loaded = new Bitmap[urls.size()];
+        int next = 0;
+        for (; next < Math.min(wanted, urls.size()); next++) {
+            running.put(completion.submit(fetch(urls.get(next), role)), next);
+        }
+
+        try {
+            while (!running.isEmpty()) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                Future<Bitmap> done = remaining > 0 ? completion.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (done == null) {
+                    break;
+                }
+                int index = running.remove(done);
+                Bitmap bitmap = null;
+                try {
+                    bitmap = done.get();
+                } catch (ExecutionException e) {
+                    PushLog.w(TAG, "Image download failed: ", e.getCause());
+                }
+                if (bitmap != null) {
+                    loaded[index] = bitmap;
+                } else if (next < urls.size()) {
+                    running.put(completion.submit(fetch(urls.get(next), role)), next);
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!running.isEmpty() && PushLog.isLoggable(Log.WARN)) {
+            PushLog.w(TAG, running.size() + " of " + urls.size() + " image downloads missed the " + deadlineMs + "ms deadline");
+        }
+
+        List<Bitmap> bitmaps = new ArrayList<>(wanted);
+        for (Bitmap bitmap : loaded) {
+            if (bitmap != null && bitmaps.size() < wanted) {
+                bitmaps.add(bitmap);
+            }
+        }
+        return bitmaps;
+    }
+
+    private Callable<Bitmap> fetch(String url, NotificationImageDecoder.Role role) {
+        return () -> load(url, role);
+    }
+
+    /**
+     * Warm the disk cache with urls in the background, in the given order, stopping once
+     * roughly maxBytes have been downloaded. URLs that are already fresh in the cache cost
+     * nothing. Nothing is decoded: the image's role isn't known until a push uses it.
+     * Prefetches aren't recorded in the image fetch timings or cache counters, which are
+     * about what pushes wait for.
+     */
+    void prefetch(List<String> urls, long maxBytes) {
+        PREFETCH_EXECUTOR.execute(() -> {
+            long downloaded = 0;
+            int fetched = 0;
+            for (String url : urls) {
+                if (downloaded >= maxBytes) {
+                    if (PushLog.isDebug()) {
+                        PushLog.d(TAG, "Prefetch budget of " + maxBytes + " bytes used, skipping the rest");
+                    }
+                    break;
+                }
+                NotificationImageCache.Entry cached = cache.getEntry(url);
+                if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                    continue;
+                }
+                byte[] data = loadBytes(url, false);
+                if (data != null) {
+                    downloaded += data.length;
+                    fetched++;
+                }
+            }
+            if (PushLog.isDebug()) {
+                PushLog.d(TAG, "Prefetched " + fetched + " of " + urls.size() + " images (" + downloaded + " bytes)");
+            }
+        });
+    }
+
+    /**
+     * Drop every cached image, in memory and on disk, on the prefetch thread so the disk
+     * work stays off the caller's. Prefetches already queued run first.
+     */
+    void clearCache() {
+        PREFETCH_EXECUTOR.execute(cache::clear);
+    }
+
+    /**
+     * Encoded bytes for imageUrl: a fresh disk cache entry as is, otherwise a single shared
+     * (conditional, if we have validators) request. A stale entry is still better than
+     * nothing if the server can't be reached. forPush is false for prefetches, which keep
+     * out of PushMetrics and the cache counters. A push that joins a prefetch's request in
+     * flight isn't timed either; its wait is still in the render timing.
+     */
+    private byte[] loadBytes(String imageUrl, boolean forPush) {
+        NotificationImageCache.Entry cached = cache.getEntry(imageUrl);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            if (forPush) {
+                cache.recordDiskHit();
+            }
+            return cached.body;
+        }
+        return singleFlight(inFlightFetches, imageUrl, () -> {
+            try {
+                return fetchAndStore(imageUrl, cached, forPush);
+            } catch (IOException e) {
+                PushLog.w(TAG, "Error downloading image: ", e.getMessage());
+                if (cached != null) {
+                    if (forPush) {
+                        cache.recordDiskHit();
+                    }
+                    return cached.body;
+                }
+                return null;
+            }
+        });
+    }
+
+    private byte[] fetchAndStore(String imageUrl, NotificationImageCache.Entry cached, boolean forPush) throws IOException {
+        boolean conditional = cached != null && cached.canRevalidate();
+        long fetchStart = PushMetrics.start();
+        ImageHttpClient.Response response = ImageHttpClient.get()
+            .fetch(imageUrl, conditional ? cached.etag : null, conditional ? cached.lastModified : null);
+        if (forPush) {
+            PushMetrics.record(PushMetrics.Stage.IMAGE_FETCH, fetchStart);
+        }
+        long expiresAt = System.currentTimeMillis() + (response.maxAgeMs >= 0 ? response.maxAgeMs : DEFAULT_FRESHNESS_MS);
+
+        if (response.isNotModified() && cached != null) {
+            if (forPush) {
+                cache.recordRevalidated();
+            }
+            cache.putEntry(imageUrl, new NotificationImageCache.Entry(cached.body, cached.etag, cached.lastModified, expiresAt));
+            return cached.body;
+        }
+
+        if (forPush) {
+            cache.recordMiss();
+        }
+        byte[] body = response.body;
+        // Only keep bodies that look like images, so a broken response isn't served again.
+        if (body != null && NotificationImageDecoder.isDecodable(body)) {
+            cache.putEntry(imageUrl, new NotificationImageCache.Entry(body, response.etag, response.lastModified, expiresAt));
+        }
+        return body;
+    }
+
+    /**
+     * Run work for key unless the same key is already running, in which case wait for and
+     * return that result. Failures are shared too: every waiter sees null.
+     */
+    private static <T> T singleFlight(ConcurrentHashMap<String, FutureTask<T>> inFlight, String key, Callable<T> work) {
+        FutureTask<T> task = new FutureTask<>(work);
+        FutureTask<T> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            existing = task;
+        }
+        try {
+            return existing.get();
+        } catch (ExecutionException e) {
+            PushLog.w(TAG, "Image load failed: ", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
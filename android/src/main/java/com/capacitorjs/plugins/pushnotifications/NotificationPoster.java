@@ -0,0 +1,356 @@
+/* FREEGLE: Coalescing, rate-limited front end for NotificationManager.notify */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import androidx.annotation.RequiresApi;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every rendered notification is posted through here rather than straight to notify().
+ *
+ * After Doze, a reboot or during a busy chat FCM can deliver dozens of pushes in a few
+ * seconds. Posted one by one, each alerts, and NotificationManagerService starts dropping
+ * updates from an app that enqueues more than a handful per second. So:
+ *
+ * - Posting is limited by a token bucket (RATE_PER_SECOND, up to BURST at once), kept under
+ *   the platform's per-app limit.
+ * - The first post for a notId goes out immediately if there's a token. Further posts for the
+ *   same notId within COALESCE_WINDOW_MS, or while out of tokens, wait in a pending map where a
+ *   newer post replaces the older one, and are flushed in arrival order as tokens allow. Only
+ *   the latest content is posted, and it alerts once.
+ * - If GROUP_THRESHOLD or more distinct notIds are waiting, the backlog is collapsed into
+ *   a group: one summary listing the titles, which alerts once, and the children then drain
+ *   silently (GROUP_ALERT_SUMMARY) at the allowed rate.
+ *
+ * Nobody waits for held-back posts: MessagingService returns as soon as the render is done,
+ * so the next message can join the backlog. Instead, while anything is waiting, a
+ * NotificationFlushJobService job keeps the process alive until it has gone out.
+ */
+class NotificationPoster {
+
+    private static final String TAG = "NotificationPoster";
+
+    static final double RATE_PER_SECOND = 4;
+    static final int BURST = 4;
+    static final long COALESCE_WINDOW_MS = 250;
+    static final int GROUP_THRESHOLD = 4;
+    /** Longest NotificationFlushJobService keeps the process up for held-back posts. */
+    static final long FLUSH_JOB_MAX_MS = 60_000;
+    private static final int FLUSH_JOB_ID = 0x46530000; // outside the render jobs' 0x4652xxxx range
+    static final String GROUP_KEY = "com.capacitorjs.plugins.pushnotifications.BACKLOG";
+    /** Notification id of the backlog summary; notIds from the server are positive. */
+    static final int SUMMARY_ID = -0x4652;
+    private static final int SUMMARY_MAX_LINES = 6;
+
+    private static NotificationPoster instance;
+
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "NotificationPoster");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // All guarded by this
+    private final LinkedHashMap<Integer, Notification> pending = new LinkedHashMap<>();
+    private final Map<Integer, Long> lastPosted = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, CharSequence> backlogTitles = new LinkedHashMap<>();
+    private double tokens = BURST;
+    private long lastRefill = SystemClock.elapsedRealtime();
+    private boolean flushScheduled;
+    private boolean grouping;
+    private boolean summaryDirty;
+    private boolean flushJobScheduled;
+    private int flushJobRun;
+    // Channel and tap intent of the last summary, reused when a cancel rewrites it after the backlog has drained
+    private String summaryChannelId;
+    private PendingIntent summaryIntent;
+
+    static synchronized NotificationPoster get(Context context) {
+        if (instance == null) {
+            instance = new NotificationPoster(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    NotificationPoster(Context context) {
+        this.context = context;
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    /**
+     * Post notification as notId, now or, if it must wait, as soon as the window and rate
+     * allow. A later post for the same notId replaces a waiting one.
+     */
+    synchronized void post(int notId, Notification notification) {
+        long now = SystemClock.elapsedRealtime();
+        refill(now);
+        Long last = lastPosted.get(notId);
+        boolean recentlyPosted = last != null && now - last < COALESCE_WINDOW_MS;
+        if (pending.isEmpty() && !grouping && !recentlyPosted && tokens >= 1) {
+            send(notId, notification, now);
+            return;
+        }
+        pending.put(notId, notification);
+        if (grouping) {
+            addBacklogTitle(notId, notification);
+        }
+        scheduleFlushJob();
+        PushLog.d(TAG, "Deferred post, waiting: ", pending.size());
+        scheduleFlush(recentlyPosted ? COALESCE_WINDOW_MS - (now - last) : 0);
+    }
+
+    /**
+     * Drop any waiting post for notId and remove it from the screen and the backlog summary.
+     */
+    synchronized void cancel(int notId) {
+        pending.remove(notId);
+        if (backlogTitles.remove(notId) != null) {
+            if (backlogTitles.isEmpty()) {
+                summaryDirty = false;
+                notificationManager.cancel(SUMMARY_ID);
+            } else {
+                summaryDirty = true;
+                scheduleFlush(0);
+            }
+        }
+        notificationManager.cancel(notId);
+        DeliveredNotificationIndex.removed(null, notId);
+        if (pending.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drop the waiting posts that filter accepts and return their notIds. They aren't in
+     * DeliveredNotificationIndex yet, so a cancel by chat, category or group asks here too.
+     */
+    synchronized List<Integer> cancelPending(DeliveredNotificationIndex.Filter filter) {
+        List<Integer> cancelled = new ArrayList<>();
+        for (Map.Entry<Integer, Notification> entry : pending.entrySet()) {
+            if (filter.accepts(DeliveredNotificationIndex.describe(null, entry.getKey(), entry.getValue()))) {
+                cancelled.add(entry.getKey());
+            }
+        }
+        for (int notId : cancelled) {
+            cancel(notId);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Drop everything waiting and clear all notifications.
+     */
+    synchronized void cancelAll() {
+        pending.clear();
+        grouping = false;
+        summaryDirty = false;
+        backlogTitles.clear();
+        notificationManager.cancelAll();
+        DeliveredNotificationIndex.clear();
+        notifyAll();
+    }
+
+    /**
+     * Wait up to timeoutMs for waiting posts to go out, so a job can stay alive until they
+     * have. Returns true if nothing is left waiting.
+     */
+    synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (!pending.isEmpty() || summaryDirty) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private void scheduleFlush(long minDelayMs) {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        long tokenDelay = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / RATE_PER_SECOND);
+        scheduler.schedule(this::flush, Math.max(Math.max(minDelayMs, tokenDelay), COALESCE_WINDOW_MS / 5), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void flush() {
+        flushScheduled = false;
+        long now = SystemClock.elapsedRealtime();
+        refill(now);
+
+        if (!grouping && pending.size() >= GROUP_THRESHOLD && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            grouping = true;
+            backlogTitles.clear();
+            for (Map.Entry<Integer, Notification> entry : pending.entrySet()) {
+                addBacklogTitle(entry.getKey(), entry.getValue());
+            }
+            PushLog.d(TAG, "Collapsing backlog into a group: ", pending.size());
+        }
+        if (summaryDirty && tokens >= 1) {
+            sendSummary(now);
+        }
+
+        long retryMs = 0;
+        Iterator<Map.Entry<Integer, Notification>> it = pending.entrySet().iterator();
+        while (it.hasNext() && tokens >= 1) {
+            Map.Entry<Integer, Notification> next = it.next();
+            Long last = lastPosted.get(next.getKey());
+            if (last != null && now - last < COALESCE_WINDOW_MS) {
+                // Still inside this notId's window; give later updates a chance to replace it
+                long wait = COALESCE_WINDOW_MS - (now - last);
+                retryMs = retryMs == 0 ? wait : Math.min(retryMs, wait);
+                continue;
+            }
+            it.remove();
+            Notification notification = next.getValue();
+            if (grouping) {
+                notification = asGroupChild(notification);
+            }
+            send(next.getKey(), notification, now);
+        }
+
+        if (!pending.isEmpty() || summaryDirty) {
+            scheduleFlush(retryMs);
+        } else {
+            grouping = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Called by NotificationFlushJobService as it starts. Returns the run to hand back to
+     * flushJobFinished, so a run that was stopped and replaced can't clear the flag of its
+     * replacement.
+     */
+    synchronized int flushJobStarted() {
+        return ++flushJobRun;
+    }
+
+    /**
+     * Called by NotificationFlushJobService as a run finishes; schedules another job if posts
+     * are still waiting.
+     */
+    synchronized void flushJobFinished(int run) {
+        if (run != flushJobRun) {
+            return;
+        }
+        flushJobScheduled = false;
+        if (!pending.isEmpty() || summaryDirty) {
+            scheduleFlushJob();
+        }
+    }
+
+    private void scheduleFlushJob() {
+        if (flushJobScheduled) {
+            return;
+        }
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(FLUSH_JOB_ID, new ComponentName(context, NotificationFlushJobService.class))
+            .setOverrideDeadline(0)
+            .build();
+        try {
+            flushJobScheduled = scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS;
+        } catch (RuntimeException e) {
+            PushLog.w(TAG, "Could not schedule flush job: ", e.getMessage());
+        }
+    }
+
+    private void send(int notId, Notification notification, long now) {
+        tokens -= 1;
+        notificationManager.notify(notId, notification);
+        DeliveredNotificationIndex.posted(null, notId, notification);
+        lastPosted.remove(notId);
+        lastPosted.put(notId, now);
+        if (lastPosted.size() > 64) {
+            // Oldest first: drop entries whose window has long passed
+            Iterator<Long> times = lastPosted.values().iterator();
+            while (times.hasNext() && now - times.next() >= COALESCE_WINDOW_MS) {
+                times.remove();
+            }
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(BURST, tokens + (now - lastRefill) * RATE_PER_SECOND / 1000);
+        lastRefill = now;
+    }
+
+    private void addBacklogTitle(int notId, Notification notification) {
+        CharSequence title = notification.extras.getCharSequence(Notification.EXTRA_TITLE);
+        if (title != null) {
+            backlogTitles.remove(notId);
+            backlogTitles.put(notId, title);
+        }
+        summaryDirty = true;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private Notification asGroupChild(Notification notification) {
+        if (notification.getGroup() != null) {
+            return notification; // already in a group (chats); leave it there
+        }
+        return Notification.Builder.recoverBuilder(context, notification)
+            .setGroup(GROUP_KEY)
+            .setGroupAlertBehavior(Notification.GROUP_ALERT_SUMMARY)
+            .build();
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void sendSummary(long now) {
+        summaryDirty = false;
+        Notification first = pending.isEmpty() ? null : pending.values().iterator().next();
+        if (first != null && first.getChannelId() != null) {
+            summaryChannelId = first.getChannelId();
+            summaryIntent = first.contentIntent;
+        }
+        if (summaryChannelId == null) {
+            return;
+        }
+        int count = backlogTitles.size();
+        Notification.InboxStyle style = new Notification.InboxStyle();
+        int skip = count - SUMMARY_MAX_LINES;
+        for (CharSequence title : backlogTitles.values()) {
+            if (skip-- <= 0) {
+                style.addLine(title);
+            }
+        }
+        if (count > SUMMARY_MAX_LINES) {
+            style.setSummaryText("+" + (count - SUMMARY_MAX_LINES) + " more");
+        }
+        Notification summary = new Notification.Builder(context, summaryChannelId)
+            .setSmallIcon(PushEnvironment.get(context).smallIconResId)
+            .setContentTitle(count + " new notifications")
+            .setStyle(style)
+            .setGroup(GROUP_KEY)
+            .setGroupSummary(true)
+            .setGroupAlertBehavior(Notification.GROUP_ALERT_SUMMARY)
+            .setOnlyAlertOnce(true)
+            .setAutoCancel(true)
+            .setContentIntent(summaryIntent)
+            .build();
+        send(SUMMARY_ID, summary, now);
+    }
+}
@@ -0,0 +1,60 @@
+/* FREEGLE: Job that finishes notification renders which outlived onMessageReceived */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import java.util.List;
+
+/**
+ * Scheduled by NotificationRenderPipeline when a render is still running at the end of
+ * MessagingService's time budget. The job's own lifetime keeps the process alive until
+ * the notification has been posted. It is persisted, so if the process was killed in the
+ * meantime the render is simply redone from the payloads in the job extras (more than one
+ * when notIds share the job id).
+ *
+ * If the system stops the job, the worker is interrupted and exits without calling
+ * jobFinished; the job is run again later and redoes whatever hadn't finished, joining any
+ * render of the same payload that is still in flight rather than starting a second one.
+ */
+public class NotificationRenderJobService extends JobService {
+
+    private static final String TAG = "NotificationRenderJob";
+
+    private Thread worker;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        List<PushPayload> payloads = NotificationRenderPipeline.fromExtras(params.getExtras());
+        Thread thread = new Thread(
+            () -> {
+                NotificationRenderPipeline pipeline = NotificationRenderPipeline.get(this);
+                for (PushPayload payload : payloads) {
+                    boolean shown = pipeline.renderBlocking(payload);
+                    if (Thread.interrupted()) {
+                        return; // stopped; the rescheduled job takes over
+                    }
+                    PushLog.d(TAG, "Deferred render finished, shown: ", shown);
+                }
+                jobFinished(params, false);
+            },
+            "NotificationRenderJob"
+        );
+        synchronized (this) {
+            worker = thread;
+        }
+        thread.start();
+        return true; // still working on the background thread
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        synchronized (this) {
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+        return true; // stopped early: run it again later
+    }
+}
@@ -0,0 +1,384 @@
+/* FREEGLE: Worker pool that renders and posts notifications off the FCM thread */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders notifications (payload parsing, image downloads, collage compositing, notify())
+ * on its own worker threads instead of the thread that delivered the message.
+ *
+ * MessagingService.onMessageReceived only has a limited time before the OS may stop the
+ * service and kill the process, taking a half-rendered digest with it. The service now
+ * hands the payload to this pipeline and waits up to IN_SERVICE_BUDGET_MS. If the render
+ * is still going after that, the payload is also handed to NotificationRenderJobService as
+ * an expedited, persisted job, which finishes the render (or waits for the one already
+ * running) with the time guarantees of a job.
+ *
+ * Renders are de-duplicated by payload while in flight, so the same message submitted by
+ * PushNotificationsPlugin.fireNotification, MessagingService and the job is drawn once.
+ *
+ * Work is split into lanes so a chat message never waits behind a digest's image downloads
+ * and collage. Each lane has its own workers, queue depth and queue-wait metric. A
+ * BACKGROUND render also holds off while any INTERACTIVE render is queued or running, for up
+ * to BACKGROUND_MAX_DEFER_MS. It gets a shorter BACKGROUND_SERVICE_BUDGET_MS in
+ * onMessageReceived before it is handed to a job, so the FCM thread is soon free for the next
+ * message, and that job is a regular one: the app's expedited-job quota is kept for the
+ * INTERACTIVE lane.
+ */
+class NotificationRenderPipeline {
+
+    private static final String TAG = "NotificationRenderPipeline";
+
+    /** How long onMessageReceived waits before handing the render to a job. */
+    static final long IN_SERVICE_BUDGET_MS = 8000;
+    /**
+     * The same for BACKGROUND renders, which shouldn't hold up the messages behind them for
+     * long. Enough for a digest whose photos are cached or come from a responsive server.
+     */
+    static final long BACKGROUND_SERVICE_BUDGET_MS = 2500;
+    /** Longest a BACKGROUND render waits for INTERACTIVE ones to finish before starting anyway. */
+    static final long BACKGROUND_MAX_DEFER_MS = 3000;
+    /**
+     * Job ids are NOTIFICATION_JOB_ID_BASE + (notId hash & 0xffff). notIds that collide share
+     * the job: its extras hold one payload per notId under EXTRA_PAYLOADS, and scheduling
+     * merges into whatever the pending job already carries instead of replacing it.
+     */
+    private static final int NOTIFICATION_JOB_ID_BASE = 0x46520000;
+    private static final String EXTRA_PAYLOADS = "payloads";
+    // Remember recently finished renders so a job that was handed a render which then
+    // completed in-process doesn't draw (and alert) it a second time.
+    private static final int MAX_COMPLETED_KEYS = 64;
+
+    /**
+     * Where a payload is rendered. Chat messages are INTERACTIVE: somebody is waiting for them
+     * and they are quick to draw, as are cancels. NEW_POSTS digests are BACKGROUND: passive,
+     * and slow because of their images.
+     */
+    enum Lane {
+        INTERACTIVE(2, Thread.NORM_PRIORITY, IN_SERVICE_BUDGET_MS, PushMetrics.Stage.QUEUE_WAIT_INTERACTIVE),
+        BACKGROUND(1, Thread.MIN_PRIORITY, BACKGROUND_SERVICE_BUDGET_MS, PushMetrics.Stage.QUEUE_WAIT_BACKGROUND);
+
+        final int threads;
+        final int priority;
+        /** What MessagingService should pass to awaitOrHandOff. */
+        final long serviceBudgetMs;
+        final PushMetrics.Stage waitStage;
+
+        Lane(int threads, int priority, long serviceBudgetMs, PushMetrics.Stage waitStage) {
+            this.threads = threads;
+            this.priority = priority;
+            this.serviceBudgetMs = serviceBudgetMs;
+            this.waitStage = waitStage;
+        }
+
+        static Lane of(PushPayload payload) {
+            if (payload.validity == PushPayloadParser.Validity.CANCEL) {
+                return INTERACTIVE;
+            }
+            return payload.isCategory(PushNotificationsPlugin.CATEGORY_NEW_POSTS) ? BACKGROUND : INTERACTIVE;
+        }
+    }
+
+    /** A lane's workers and its depth: renders queued or running. */
+    private static final class LaneWorkers {
+
+        final ExecutorService executor;
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicInteger maxDepth = new AtomicInteger();
+
+        LaneWorkers(Lane lane) {
+            String name = "NotificationRender-" + lane.name().toLowerCase(Locale.ROOT) + "-";
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(lane.threads, r -> {
+                Thread t = new Thread(r, name + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(lane.priority);
+                return t;
+            });
+        }
+
+        void enter() {
+            int now = depth.incrementAndGet();
+            int max;
+            while (now > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, now)) {
+                // retry
+            }
+        }
+    }
+
+    private static NotificationRenderPipeline instance;
+
+    private final Context context;
+    private final LaneWorkers[] lanes = new LaneWorkers[Lane.values().length];
+    private final Object interactiveIdle = new Object();
+    private final ConcurrentHashMap<String, FutureTask<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> completed = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_COMPLETED_KEYS;
+        }
+    };
+
+    static synchronized NotificationRenderPipeline get(Context context) {
+        if (instance == null) {
+            instance = new NotificationRenderPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    NotificationRenderPipeline(Context context) {
+        this.context = context;
+        for (Lane lane : Lane.values()) {
+            lanes[lane.ordinal()] = new LaneWorkers(lane);
+        }
+    }
+
+    /**
+     * Queue payload for rendering in its lane and return immediately. If the same payload is
+     * already being rendered, the existing render is returned instead of starting another.
+     */
+    Future<Boolean> submit(PushPayload payload) {
+        String key = payload.renderKey();
+        Lane lane = Lane.of(payload);
+        LaneWorkers workers = lanes[lane.ordinal()];
+        long queuedAt = PushMetrics.start();
+        FutureTask<Boolean> task = new FutureTask<>(() -> {
+            try {
+                if (lane == Lane.BACKGROUND) {
+                    awaitInteractiveIdle();
+                }
+                PushMetrics.record(lane.waitStage, queuedAt);
+                boolean shown = NotificationHelper.createAndShowNotification(context, payload);
+                synchronized (completed) {
+                    completed.put(key, shown);
+                }
+                return shown;
+            } finally {
+                inFlight.remove(key);
+                if (workers.depth.decrementAndGet() == 0 && lane == Lane.INTERACTIVE) {
+                    synchronized (interactiveIdle) {
+                        interactiveIdle.notifyAll();
+                    }
+                }
+            }
+        });
+        FutureTask<Boolean> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            return existing;
+        }
+        workers.enter();
+        workers.executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Per-lane depth now and the most seen since the last reset, as JSON for getPushMetrics.
+     */
+    JSObject laneStats(boolean reset) {
+        JSObject result = new JSObject();
+        for (Lane lane : Lane.values()) {
+            LaneWorkers workers = lanes[lane.ordinal()];
+            int depth = workers.depth.get();
+            JSObject json = new JSObject();
+            json.put("depth", depth);
+            json.put("maxDepth", reset ? workers.maxDepth.getAndSet(depth) : workers.maxDepth.get());
+            result.put(lane.name().toLowerCase(Locale.ROOT), json);
+        }
+        return result;
+    }
+
+    private void awaitInteractiveIdle() throws InterruptedException {
+        LaneWorkers interactive = lanes[Lane.INTERACTIVE.ordinal()];
+        long deadline = SystemClock.elapsedRealtime() + BACKGROUND_MAX_DEFER_MS;
+        synchronized (interactiveIdle) {
+            while (interactive.depth.get() > 0) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return;
+                }
+                interactiveIdle.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * Wait up to budgetMs for the render of payload (if one is in flight). If it's still
+     * running after that, schedule a job to see it through and return null.
+     */
+    Boolean awaitOrHandOff(PushPayload payload, long budgetMs) {
+        FutureTask<Boolean> task = inFlight.get(payload.renderKey());
+        if (task == null) {
+            return wasCompleted(payload);
+        }
+        try {
+            return task.get(budgetMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (PushLog.isLoggable(Log.WARN)) {
+                PushLog.w(TAG, "Render still running after " + budgetMs + "ms, handing off to a job");
+            }
+            scheduleJob(payload);
+            return null;
+        } catch (ExecutionException e) {
+            PushLog.e(TAG, "Render failed", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scheduleJob(payload);
+            return null;
+        }
+    }
+
+    /**
+     * Render payload to completion on behalf of a job: join the in-process render if there
+     * is one, skip it if it already finished, otherwise render it now.
+     */
+    boolean renderBlocking(PushPayload payload) {
+        Boolean done = wasCompleted(payload);
+        if (done != null) {
+            return done;
+        }
+        try {
+            return submit(payload).get();
+        } catch (ExecutionException e) {
+            PushLog.e(TAG, "Render failed", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Boolean wasCompleted(PushPayload payload) {
+        synchronized (completed) {
+            return completed.get(payload.renderKey());
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void scheduleJob(PushPayload payload) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        int jobId = NOTIFICATION_JOB_ID_BASE + (notIdHash(payload) & 0xffff);
+        boolean expedited = Lane.of(payload) == Lane.INTERACTIVE;
+
+        // Keep the payloads of other notIds that hash to the same job; a newer payload for
+        // the same notId replaces the older one, as one notification only needs one render
+        LinkedHashMap<String, PushPayload> payloads = new LinkedHashMap<>();
+        JobInfo pending = pendingJob(scheduler, jobId);
+        if (pending != null) {
+            for (PushPayload queued : fromExtras(pending.getExtras())) {
+                payloads.put(notIdKey(queued), queued);
+                expedited |= Lane.of(queued) == Lane.INTERACTIVE;
+            }
+        }
+        payloads.remove(notIdKey(payload));
+        payloads.put(notIdKey(payload), payload);
+
+        PersistableBundle byNotId = new PersistableBundle();
+        for (Map.Entry<String, PushPayload> entry : payloads.entrySet()) {
+            PersistableBundle data = new PersistableBundle();
+            entry.getValue().copyTo(data::putString);
+            byNotId.putPersistableBundle(entry.getKey(), data);
+        }
+        PersistableBundle extras = new PersistableBundle();
+        extras.putPersistableBundle(EXTRA_PAYLOADS, byNotId);
+        JobInfo.Builder builder = new JobInfo.Builder(jobId, new ComponentName(context, NotificationRenderJobService.class))
+            .setExtras(extras)
+            .setPersisted(true)
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        // A digest can wait for a regular job; only the INTERACTIVE lane spends expedited quota
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && expedited) {
+            builder.setExpedited(true);
+        }
+        if (payloads.size() > 1) {
+            PushLog.d(TAG, "Render job shared by notIds: ", payloads.keySet());
+        }
+        try {
+            if (scheduler.schedule(builder.build()) != JobScheduler.RESULT_SUCCESS) {
+                PushLog.w(TAG, "Failed to schedule render job");
+            }
+        } catch (RuntimeException e) {
+            // e.g. expedited job quota exhausted; the in-process render is still running
+            PushLog.w(TAG, "Could not schedule render job: ", e.getMessage());
+        }
+    }
+
+    private static JobInfo pendingJob(JobScheduler scheduler, int jobId) {
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == jobId) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The payloads a render job carries, one per notId. Jobs persisted before payloads were
+     * grouped by notId hold a single payload as flat extras.
+     */
+    static List<PushPayload> fromExtras(PersistableBundle extras) {
+        List<PushPayload> payloads = new ArrayList<>();
+        if (extras == null) {
+            return payloads;
+        }
+        PersistableBundle byNotId = extras.getPersistableBundle(EXTRA_PAYLOADS);
+        if (byNotId == null) {
+            payloads.add(toPayload(extras));
+            return payloads;
+        }
+        for (String notId : byNotId.keySet()) {
+            PersistableBundle data = byNotId.getPersistableBundle(notId);
+            if (data != null) {
+                payloads.add(toPayload(data));
+            }
+        }
+        return payloads;
+    }
+
+    private static PushPayload toPayload(PersistableBundle data) {
+        Map<String, String> msgdata = new LinkedHashMap<>();
+        for (String key : data.keySet()) {
+            String value = data.getString(key);
+            if (value != null) {
+                msgdata.put(key, value);
+            }
+        }
+        return PushPayload.from(null, msgdata);
+    }
+
+    private static String notIdKey(PushPayload payload) {
+        String notId = payload.get("notId");
+        return notId != null ? notId : "";
+    }
+
+    private static int notIdHash(PushPayload payload) {
+        String notId = payload.get("notId");
+        return notId != null ? notId.hashCode() : 0;
+    }
+}
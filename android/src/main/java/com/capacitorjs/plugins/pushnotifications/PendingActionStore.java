@@ -0,0 +1,201 @@
+/* FREEGLE: Durable store of notification actions taken while the app wasn't running */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import androidx.annotation.VisibleForTesting;
+import com.getcapacitor.JSObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.json.JSONException;
+
+/**
+ * Reply / Mark Read / View actions that NotificationActionReceiver couldn't deliver because the
+ * plugin wasn't loaded, kept until load() replays them to JS.
+ *
+ * These actions are mostly used with the app killed, so a single static slot lost all but the
+ * last of them, and the last too if the process died. Now each action is appended to a log file
+ * as an "add" record with an increasing id; load() replays the unacknowledged ones in order and
+ * appends an "ack" record for each straight after handing it to the bridge, so an action is
+ * replayed at most once. Once nothing is pending the log is deleted; if it grows past
+ * COMPACT_BYTES it is rewritten with just the pending actions.
+ */
+class PendingActionStore {
+
+    private static final String TAG = "PendingActionStore";
+    private static final String DIR = "push_actions";
+    private static final String LOG = "actions.log";
+    private static final String ADD = "add";
+    private static final String ACK = "ack";
+    private static final long COMPACT_BYTES = 64 * 1024;
+
+    /**
+     * One pending action: the pushNotificationActionPerformed event it will be replayed as.
+     */
+    static final class Entry {
+
+        final long id;
+        final JSObject action;
+
+        Entry(long id, JSObject action) {
+            this.id = id;
+            this.action = action;
+        }
+    }
+
+    private static File file;
+    private static long nextId = -1;
+
+    private PendingActionStore() {}
+
+    // Only marked as loaded once the log has been scanned, so a failed scan is retried rather
+    // than handing out ids that are already in the log.
+    private static void init(Context context) throws IOException {
+        if (file != null) {
+            return;
+        }
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File log = new File(dir, LOG);
+        long maxId = scan(log, new LinkedHashMap<>());
+        nextId = maxId + 1;
+        file = log;
+    }
+
+    /**
+     * Forget what's held in memory, as a process restart would.
+     */
+    @VisibleForTesting
+    static synchronized void unload() {
+        file = null;
+        nextId = -1;
+    }
+
+    /**
+     * Persist an action for replay when the plugin next loads.
+     */
+    static synchronized void append(Context context, JSObject action) {
+        try {
+            init(context);
+            appendLine(ADD + "\t" + nextId + "\t" + action.toString());
+            nextId++;
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to store action", e);
+        }
+    }
+
+    /**
+     * Actions not yet acknowledged, oldest first.
+     */
+    static synchronized List<Entry> pending(Context context) {
+        try {
+            init(context);
+            return new ArrayList<>(read().values());
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to read stored actions", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Record that an action has been delivered, so it is never replayed again.
+     */
+    static synchronized void ack(Context context, long id) {
+        try {
+            init(context);
+            appendLine(ACK + "\t" + id);
+            if (file.length() > COMPACT_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to acknowledge action", e);
+        }
+    }
+
+    /**
+     * Drop acknowledged actions from the log, deleting it if nothing is pending.
+     */
+    static synchronized void compact(Context context) {
+        try {
+            init(context);
+            compact();
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to compact stored actions", e);
+        }
+    }
+
+    private static void compact() throws IOException {
+        LinkedHashMap<Long, Entry> pending = read();
+        if (pending.isEmpty()) {
+            file.delete();
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : pending.values()) {
+            sb.append(ADD).append('\t').append(entry.id).append('\t').append(entry.action.toString()).append('\n');
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static void appendLine(String line) throws IOException {
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Replays the log: added actions in order, minus acknowledged ones. */
+    private static LinkedHashMap<Long, Entry> read() throws IOException {
+        LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+        scan(file, pending);
+        return pending;
+    }
+
+    /**
+     * Replay log into pending and return the highest id it mentions (added or acknowledged),
+     * or 0 if there is none.
+     */
+    private static long scan(File log, LinkedHashMap<Long, Entry> pending) throws IOException {
+        long maxId = 0;
+        if (!log.exists()) {
+            return maxId;
+        }
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                try {
+                    long id = Long.parseLong(parts[1]);
+                    maxId = Math.max(maxId, id);
+                    if (ADD.equals(parts[0]) && parts.length == 3) {
+                        pending.put(id, new Entry(id, new JSObject(parts[2])));
+                    } else if (ACK.equals(parts[0])) {
+                        pending.remove(id);
+                    }
+                } catch (NumberFormatException | JSONException | ArrayIndexOutOfBoundsException e) {
+                    // A line cut short by the process dying mid-write; skip it
+                }
+            }
+        }
+        return maxId;
+    }
+}
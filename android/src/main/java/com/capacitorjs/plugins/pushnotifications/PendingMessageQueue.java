@@ -0,0 +1,207 @@
+/* FREEGLE: Durable queue of pushes received before the plugin was loaded */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import androidx.annotation.VisibleForTesting;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Pushes that arrived while there was no bridge to deliver them to, kept until load() can
+ * pass them to JS.
+ *
+ * This replaces a single static lastMessage slot, which kept only the most recent push and
+ * lost even that if the process died before the app was opened. Messages are appended as
+ * one JSON line each to a file in the app's files dir; once the file holds more than
+ * 2 * MAX_MESSAGES lines it is compacted to the newest MAX_MESSAGES, so appends stay a single
+ * small write. drain() takes the whole queue in one go, dropping entries older than MAX_AGE_MS
+ * and repeats of the same message id.
+ *
+ * The file isn't fsynced: it only has to survive the process being killed, not the device
+ * losing power.
+ */
+class PendingMessageQueue {
+
+    private static final String TAG = "PendingMessageQueue";
+    private static final String DIR = "push_pending";
+    private static final String QUEUE = "queue.jsonl";
+    static final int MAX_MESSAGES = 50;
+    static final long MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * One queued push.
+     */
+    static final class Entry {
+
+        final String id;
+        final long time;
+        final Map<String, String> data;
+
+        Entry(String id, long time, Map<String, String> data) {
+            this.id = id;
+            this.time = time;
+            this.data = data;
+        }
+
+        /** Key used to spot repeats: the FCM message id, or the payload if there isn't one. */
+        String dedupeKey() {
+            return id != null ? id : "data:" + data.hashCode();
+        }
+    }
+
+    private static File file;
+    private static int lines = -1;
+
+    private PendingMessageQueue() {}
+
+    /**
+     * Forget what's held in memory, as a process restart would.
+     */
+    @VisibleForTesting
+    static synchronized void unload() {
+        file = null;
+        lines = -1;
+    }
+
+    private static void init(Context context) throws IOException {
+        if (file != null) {
+            return;
+        }
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        file = new File(dir, QUEUE);
+        lines = readEntries().size();
+    }
+
+    /**
+     * Queue a push for delivery once the plugin loads.
+     */
+    static synchronized void append(Context context, String id, Map<String, String> data) {
+        try {
+            init(context);
+            byte[] line = (toJson(new Entry(id, System.currentTimeMillis(), data)) + "\n").getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write(line);
+            }
+            lines++;
+            if (lines > 2 * MAX_MESSAGES) {
+                List<Entry> entries = readEntries();
+                write(entries.subList(Math.max(0, entries.size() - MAX_MESSAGES), entries.size()));
+            }
+        } catch (IOException | JSONException e) {
+            PushLog.e(TAG, "Failed to queue push", e);
+        }
+    }
+
+    /**
+     * Remove and return everything queued, oldest first, without expired entries and with
+     * only the newest copy of any repeated message.
+     */
+    static synchronized List<Entry> drain(Context context) {
+        List<Entry> result = new ArrayList<>();
+        try {
+            init(context);
+            if (lines == 0) {
+                return result;
+            }
+            List<Entry> entries = readEntries();
+            file.delete();
+            lines = 0;
+
+            long cutoff = System.currentTimeMillis() - MAX_AGE_MS;
+            LinkedHashMap<String, Entry> unique = new LinkedHashMap<>();
+            for (Entry entry : entries) {
+                if (entry.time >= cutoff) {
+                    String key = entry.dedupeKey();
+                    unique.remove(key); // re-insert so a repeat takes the later position
+                    unique.put(key, entry);
+                }
+            }
+            result.addAll(unique.values());
+            if (result.size() > MAX_MESSAGES) {
+                result = new ArrayList<>(result.subList(result.size() - MAX_MESSAGES, result.size()));
+            }
+            if (entries.size() != result.size()) {
+                PushLog.d(TAG, "Dropped expired or repeated pushes: ", entries.size() - result.size());
+            }
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to read queued pushes", e);
+        }
+        return result;
+    }
+
+    private static List<Entry> readEntries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    entries.add(fromJson(line));
+                } catch (JSONException e) {
+                    // A line cut short by the process dying mid-write; skip it
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void write(List<Entry> entries) throws IOException, JSONException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) {
+            sb.append(toJson(entry)).append('\n');
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+        lines = entries.size();
+    }
+
+    private static String toJson(Entry entry) throws JSONException {
+        JSONObject data = new JSONObject();
+        for (Map.Entry<String, String> field : entry.data.entrySet()) {
+            data.put(field.getKey(), field.getValue());
+        }
+        JSONObject json = new JSONObject();
+        json.put("id", entry.id);
+        json.put("time", entry.time);
+        json.put("data", data);
+        return json.toString();
+    }
+
+    private static Entry fromJson(String line) throws JSONException {
+        JSONObject json = new JSONObject(line);
+        JSONObject data = json.getJSONObject("data");
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Iterator<String> keys = data.keys(); keys.hasNext();) {
+            String key = keys.next();
+            fields.put(key, data.optString(key, null));
+        }
+        return new Entry(json.has("id") ? json.getString("id") : null, json.getLong("time"), fields);
+    }
+}
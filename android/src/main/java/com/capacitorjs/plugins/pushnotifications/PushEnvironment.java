@@ -0,0 +1,137 @@
+/* FREEGLE: Process-wide cache of the app environment used to build notifications */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.util.Log;
+import com.getcapacitor.CapConfig;
+import com.getcapacitor.PluginConfig;
+
+/**
+ * Everything about the host app that notification rendering needs and that can't change
+ * while the process is alive: manifest meta-data, icon resources, the launch activity and
+ * the plugin's capacitor.config options.
+ *
+ * Looking these up costs several PackageManager Binder calls, a reflective class lookup,
+ * parsing capacitor.config.json and decoding the app icon. They used to be repeated for
+ * every push; now they're done once, on first use, and shared by NotificationHelper and
+ * PushNotificationsPlugin. Built from capacitor.config.json rather than the bridge so it
+ * works the same when the app isn't running, which means options a host app sets in code
+ * don't reach it. presentationOptions only matters with the bridge up, so the plugin reads
+ * that from its bridge config instead.
+ */
+class PushEnvironment {
+
+    private static final String TAG = "PushEnvironment";
+    private static final String DEFAULT_ICON_META_DATA = "com.google.firebase.messaging.default_notification_icon";
+
+    private static PushEnvironment instance;
+
+    /** Application meta-data from the manifest, or null if unavailable. */
+    final Bundle metaData;
+    /** The app's resources, or null if unavailable. */
+    final Resources resources;
+    /** Manifest application icon, 0 if unknown. */
+    final int appIconResId;
+    /** Small icon for notifications: the FCM default_notification_icon meta-data, else a system icon. */
+    final int smallIconResId;
+    /** The app's MainActivity, or null if it can't be found. */
+    final Class<?> launchActivity;
+    /** progressiveImages from the plugin config. */
+    final boolean progressiveImages;
+    /** batchEvents from the plugin config. */
+    final boolean batchEvents;
+
+    private Bitmap fallbackIcon;
+    private boolean fallbackIconLoaded;
+
+    static synchronized PushEnvironment get(Context context) {
+        if (instance == null) {
+            instance = new PushEnvironment(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PushEnvironment(Context context) {
+        String packageName = context.getPackageName();
+
+        Bundle bundle = null;
+        Resources res = null;
+        int appIcon = 0;
+        try {
+            ApplicationInfo applicationInfo = getApplicationInfo(context.getPackageManager(), packageName);
+            bundle = applicationInfo.metaData;
+            res = context.getPackageManager().getResourcesForApplication(packageName);
+            appIcon = applicationInfo.icon;
+        } catch (PackageManager.NameNotFoundException e) {
+            PushLog.w(TAG, "Package not found: ", packageName);
+        }
+        metaData = bundle;
+        resources = res;
+        appIconResId = appIcon;
+
+        int pushIcon = android.R.drawable.ic_dialog_info;
+        if (bundle != null && bundle.getInt(DEFAULT_ICON_META_DATA) != 0) {
+            pushIcon = bundle.getInt(DEFAULT_ICON_META_DATA);
+        }
+        smallIconResId = pushIcon;
+
+        Class<?> activity = null;
+        try {
+            activity = Class.forName(packageName + ".MainActivity");
+        } catch (ClassNotFoundException e) {
+            PushLog.e(TAG, "MainActivity class not found", e);
+        }
+        launchActivity = activity;
+
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        boolean progressive = false;
+        boolean batch = false;
+        int logLevel = debuggable ? Log.DEBUG : Log.INFO;
+        boolean logPayloads = false;
+        try {
+            PluginConfig config = CapConfig.loadDefault(context).getPluginConfiguration("PushNotifications");
+            progressive = config.getBoolean("progressiveImages", false);
+            batch = config.getBoolean("batchEvents", false);
+            logLevel = PushLog.parseLevel(config.getString("logLevel"), logLevel);
+            logPayloads = config.getBoolean("logPayloads", false);
+        } catch (Exception e) {
+            PushLog.w(TAG, "Could not read plugin config: ", e.getMessage());
+        }
+        progressiveImages = progressive;
+        batchEvents = batch;
+        PushLog.configure(logLevel, logPayloads);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ApplicationInfo getApplicationInfo(PackageManager pm, String packageName)
+        throws PackageManager.NameNotFoundException {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
+            return pm.getApplicationInfo(packageName, PackageManager.ApplicationInfoFlags.of(PackageManager.GET_META_DATA));
+        }
+        return pm.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
+    }
+
+    /**
+     * The app icon as a bitmap, for use as a large icon when there's no image. Decoded once.
+     */
+    synchronized Bitmap getFallbackIcon() {
+        if (!fallbackIconLoaded) {
+            fallbackIconLoaded = true;
+            if (resources != null && appIconResId != 0) {
+                try {
+                    fallbackIcon = BitmapFactory.decodeResource(resources, appIconResId);
+                } catch (Exception e) {
+                    PushLog.w(TAG, "Failed to load app icon", e);
+                }
+            }
+        }
+        return fallbackIcon;
+    }
+}
@@ -0,0 +1,178 @@
+/* FREEGLE: Level-gated logging for the push handling path */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.util.Log;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Logcat facade for the plugin, with a runtime level from the logLevel plugin option.
+ *
+ * Messages are passed as a constant prefix plus one argument and only concatenated once the
+ * level check has passed, so a disabled call costs a volatile read: no StringBuilder, no
+ * boxing of int/long/boolean arguments and no toString of maps or exceptions. Anything that
+ * needs more than one argument should be wrapped in an isLoggable check at the call site.
+ *
+ * Payloads are never logged unless logPayloads is set, and then only through payload(),
+ * which truncates each value and the whole dump.
+ */
+class PushLog {
+
+    // Until PushEnvironment has read the plugin config. Its default is DEBUG for debuggable builds, else INFO.
+    private static volatile int level = Log.INFO;
+    private static volatile boolean payloads = false;
+
+    static final int NONE = Log.ASSERT + 1;
+
+    private static final int PAYLOAD_MAX_CHARS = 1024;
+    private static final int PAYLOAD_VALUE_MAX_CHARS = 120;
+
+    private PushLog() {}
+
+    static void configure(int minLevel, boolean logPayloads) {
+        level = minLevel;
+        payloads = logPayloads;
+    }
+
+    /**
+     * Level for a logLevel config value ("verbose", "debug", "info", "warn", "error", "none").
+     */
+    static int parseLevel(String name, int fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "verbose":
+                return Log.VERBOSE;
+            case "debug":
+                return Log.DEBUG;
+            case "info":
+                return Log.INFO;
+            case "warn":
+                return Log.WARN;
+            case "error":
+                return Log.ERROR;
+            case "none":
+                return NONE;
+            default:
+                return fallback;
+        }
+    }
+
+    static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    /**
+     * True unless logLevel is none. The background push log is kept at every other level,
+     * since it's how a push that arrived while the app was closed gets diagnosed.
+     */
+    static boolean backgroundLogEnabled() {
+        return level < NONE;
+    }
+
+    static boolean isDebug() {
+        return Log.DEBUG >= level;
+    }
+
+    /**
+     * True if payload dumps are enabled and debug logging is on.
+     */
+    static boolean logsPayloads() {
+        return payloads && Log.DEBUG >= level;
+    }
+
+    static void d(String tag, String msg) {
+        if (Log.DEBUG >= level) {
+            Log.d(tag, msg);
+        }
+    }
+
+    static void d(String tag, String msg, Object arg) {
+        if (Log.DEBUG >= level) {
+            Log.d(tag, msg + arg);
+        }
+    }
+
+    static void d(String tag, String msg, long arg) {
+        if (Log.DEBUG >= level) {
+            Log.d(tag, msg + arg);
+        }
+    }
+
+    static void i(String tag, String msg) {
+        if (Log.INFO >= level) {
+            Log.i(tag, msg);
+        }
+    }
+
+    static void i(String tag, String msg, Object arg) {
+        if (Log.INFO >= level) {
+            Log.i(tag, msg + arg);
+        }
+    }
+
+    static void w(String tag, String msg) {
+        if (Log.WARN >= level) {
+            Log.w(tag, msg);
+        }
+    }
+
+    static void w(String tag, String msg, Object arg) {
+        if (Log.WARN >= level) {
+            Log.w(tag, msg + arg);
+        }
+    }
+
+    static void w(String tag, String msg, Throwable tr) {
+        if (Log.WARN >= level) {
+            Log.w(tag, msg, tr);
+        }
+    }
+
+    static void e(String tag, String msg) {
+        if (Log.ERROR >= level) {
+            Log.e(tag, msg);
+        }
+    }
+
+    static void e(String tag, String msg, Throwable tr) {
+        if (Log.ERROR >= level) {
+            Log.e(tag, msg, tr);
+        }
+    }
+
+    /**
+     * A bounded dump of a push payload for debugging. Only call when logsPayloads() is true.
+     */
+    static String payload(Map<String, String> data) {
+        if (data == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(Math.min(PAYLOAD_MAX_CHARS, 64 * data.size()) + 16);
+        sb.append('{');
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (sb.length() >= PAYLOAD_MAX_CHARS) {
+                sb.append("...");
+                break;
+            }
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            String value = entry.getValue();
+            sb.append(entry.getKey()).append('=');
+            if (value != null && value.length() > PAYLOAD_VALUE_MAX_CHARS) {
+                sb.append(value, 0, PAYLOAD_VALUE_MAX_CHARS).append("...(").append(value.length()).append(" chars)");
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append('}');
+        if (sb.length() > PAYLOAD_MAX_CHARS + 3) {
+            sb.setLength(PAYLOAD_MAX_CHARS);
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/* FREEGLE: Low-overhead timing histograms for the push handling path */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import com.getcapacitor.JSObject;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency histograms and outcome counters for push handling, from FCM delivery
+ * to notify() and the JS event, read (and reset) through getPushMetrics.
+ *
+ * Recording is a couple of atomic increments into fixed buckets: no allocation, no locks,
+ * so it can stay on in production. Percentiles are approximate (the upper bound of the
+ * bucket they fall in), which is enough to see where time goes and spot regressions.
+ */
+class PushMetrics {
+
+    /**
+     * Timed stages. DELIVERY is FCM sent time to onMessageReceived, so includes clock skew.
+     * VALIDATION is PushPayload.from on a received message: parsing and checking the payload.
+     */
+    enum Stage {
+        DELIVERY,
+        RECEIVE,
+        VALIDATION,
+        ENVIRONMENT,
+        IMAGE_FETCH,
+        IMAGE_DECODE,
+        COLLAGE,
+        STYLE,
+        NOTIFY,
+        JS_DISPATCH,
+        /** Submit to start of render, per NotificationRenderPipeline lane. */
+        QUEUE_WAIT_INTERACTIVE,
+        QUEUE_WAIT_BACKGROUND
+    }
+
+    /** What createAndShowNotification did with a payload. */
+    enum Outcome {
+        SHOWN,
+        CLEARED,
+        LEGACY_IGNORED,
+        MISSING_FIELDS,
+        ERROR,
+        DUPLICATE,
+        CANCELLED
+    }
+
+    // Bucket upper bounds in microseconds, roughly 1-2.5-5 per decade from 100us to 10s.
+    private static final long[] BOUNDS_US = {
+        100, 250, 500,
+        1_000, 2_500, 5_000,
+        10_000, 25_000, 50_000,
+        100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000,
+        10_000_000
+    };
+
+    private static final Histogram[] histograms = new Histogram[Stage.values().length];
+    private static final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    private PushMetrics() {}
+
+    /**
+     * Start timestamp for a stage; pass it to record() when the stage ends.
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    static void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].add((System.nanoTime() - startNanos) / 1000);
+    }
+
+    static void recordMillis(Stage stage, long millis) {
+        histograms[stage.ordinal()].add(Math.max(0, millis) * 1000);
+    }
+
+    static void count(Outcome outcome) {
+        outcomes.incrementAndGet(outcome.ordinal());
+    }
+
+    /**
+     * Current counters as JSON, optionally zeroing them so the next read covers a fresh interval.
+     */
+    static JSObject snapshot(boolean reset) {
+        JSObject stages = new JSObject();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage.name().toLowerCase(Locale.ROOT), histograms[stage.ordinal()].toJSObject(reset));
+        }
+        JSObject outcomeCounts = new JSObject();
+        for (Outcome outcome : Outcome.values()) {
+            long value = reset ? outcomes.getAndSet(outcome.ordinal(), 0) : outcomes.get(outcome.ordinal());
+            outcomeCounts.put(outcome.name().toLowerCase(Locale.ROOT), value);
+        }
+        JSObject result = new JSObject();
+        result.put("stages", stages);
+        result.put("outcomes", outcomeCounts);
+        return result;
+    }
+
+    private static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_US.length + 1); // last = overflow
+        private final AtomicLong sumUs = new AtomicLong();
+        private final AtomicLong maxUs = new AtomicLong();
+
+        void add(long micros) {
+            int i = 0;
+            while (i < BOUNDS_US.length && micros > BOUNDS_US[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumUs.addAndGet(micros);
+            long max;
+            while (micros > (max = maxUs.get()) && !maxUs.compareAndSet(max, micros)) {
+                // retry
+            }
+        }
+
+        JSObject toJSObject(boolean reset) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = reset ? buckets.getAndSet(i, 0) : buckets.get(i);
+                total += counts[i];
+            }
+            long sum = reset ? sumUs.getAndSet(0) : sumUs.get();
+            long max = reset ? maxUs.getAndSet(0) : maxUs.get();
+
+            JSObject json = new JSObject();
+            json.put("count", total);
+            json.put("meanMs", total > 0 ? sum / 1000.0 / total : 0);
+            json.put("maxMs", max / 1000.0);
+            json.put("p50Ms", percentile(counts, total, 0.50, max));
+            json.put("p90Ms", percentile(counts, total, 0.90, max));
+            json.put("p99Ms", percentile(counts, total, 0.99, max));
+            return json;
+        }
+
+        private static double percentile(long[] counts, long total, double p, long maxUs) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long bound = i < BOUNDS_US.length ? Math.min(BOUNDS_US[i], maxUs) : maxUs;
+                    return bound / 1000.0;
+                }
+            }
+            return maxUs / 1000.0;
+        }
+    }
+}
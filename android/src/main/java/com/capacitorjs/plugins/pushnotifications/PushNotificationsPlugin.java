@@ -8,12 +8,10 @@ import android.app.NotificationManager;
 import android.app.RemoteInput;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
+import android.net.ConnectivityManager; // Freegle
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.service.notification.StatusBarNotification;
 import com.getcapacitor.*;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
@@ -24,7 +22,11 @@ import com.google.firebase.messaging.NotificationParams;
 import com.google.firebase.messaging.RemoteMessage;
 import java.util.ArrayList; // Freegle
 import java.util.Arrays;
+import java.util.HashMap; // Freegle
+import java.util.HashSet; // Freegle
+import java.util.Iterator; // Freegle
 import java.util.List; // Freegle
+import java.util.Set; // Freegle
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -35,7 +37,6 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
-import android.util.Log;
 import androidx.core.content.res.ResourcesCompat;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -52,7 +53,11 @@ public class PushNotificationsPlugin extends Plugin {
     static final String PUSH_NOTIFICATIONS = "receive";
 
     public static Bridge staticBridge = null;
+    /** @deprecated Pushes now wait in PendingMessageQueue; still delivered by load() if set. */
+    @Deprecated
     public static RemoteMessage lastMessage = null;
+    /** @deprecated Actions now wait in PendingActionStore; still delivered by load() if set. */
+    @Deprecated
     public static JSObject pendingAction = null; // Freegle: Store action when app was not running
     public NotificationManager notificationManager;
     public MessagingService firebaseMessagingService;
@@ -60,6 +65,16 @@ public class PushNotificationsPlugin extends Plugin {
 
     private static final String EVENT_TOKEN_CHANGE = "registration";
     private static final String EVENT_TOKEN_ERROR = "registrationError";
+    private static final String EVENT_BATCH = "pushNotificationsReceived"; // Freegle
+
+    // Freegle: set when batchEvents is configured; received and action events then go through it
+    private EventBatcher eventBatcher;
+    // Freegle: presentationOptions includes "alert"; read from the bridge config in load()
+    private boolean presentsAlert;
+
+    // Freegle: limits for prefetchImages
+    private static final int MAX_PREFETCH_IMAGES = 50;
+    private static final int DEFAULT_PREFETCH_MAX_BYTES = 5 * 1024 * 1024;
 
     // Freegle: Category constants for notification actions
     public static final String CATEGORY_CHAT_MESSAGE = "CHAT_MESSAGE";
@@ -70,14 +85,48 @@ public class PushNotificationsPlugin extends Plugin {
         firebaseMessagingService = new MessagingService();
 
         staticBridge = this.bridge;
+        String[] presentation = getConfig().getArray("presentationOptions"); // Freegle
+        presentsAlert = presentation != null && Arrays.asList(presentation).contains("alert"); // Freegle
+        if (PushEnvironment.get(getContext()).batchEvents) {
+            eventBatcher = new EventBatcher(batch -> {
+                long dispatchStart = PushMetrics.start();
+                notifyListeners(EVENT_BATCH, batch, true);
+                PushMetrics.record(PushMetrics.Stage.JS_DISPATCH, dispatchStart);
+            });
+        }
+
         if (lastMessage != null) {
             fireNotification(lastMessage, false); // Freegle
             lastMessage = null;
         }
 
-        // Freegle: Process any pending action from when app was not running
+        // Freegle: Deliver pushes that arrived while the app wasn't running. MessagingService has
+        // already shown their notifications, so they only go to JS.
+        for (PendingMessageQueue.Entry entry : PendingMessageQueue.drain(getContext())) {
+            dispatchReceived(toReceivedEvent(entry.id, entry.data, false));
+        }
+
+        // Freegle: Replay actions taken while the app was not running, in order. Each is
+        // acknowledged as soon as it's handed over so it can't be replayed twice; when batching,
+        // that's once the batch has gone.
+        List<PendingActionStore.Entry> pendingActions = PendingActionStore.pending(getContext());
+        for (PendingActionStore.Entry entry : pendingActions) {
+            dispatchAction(entry.action);
+            if (eventBatcher == null) {
+                PendingActionStore.ack(getContext(), entry.id);
+            }
+        }
+        if (eventBatcher != null) {
+            eventBatcher.flush();
+            for (PendingActionStore.Entry entry : pendingActions) {
+                PendingActionStore.ack(getContext(), entry.id);
+            }
+        }
+        if (!pendingActions.isEmpty()) {
+            PendingActionStore.compact(getContext());
+        }
         if (pendingAction != null) {
-            notifyListeners("pushNotificationActionPerformed", pendingAction, true);
+            dispatchAction(pendingAction);
             pendingAction = null;
         }
 
@@ -88,7 +137,12 @@ public class PushNotificationsPlugin extends Plugin {
     protected void handleOnNewIntent(Intent data) {
         super.handleOnNewIntent(data);
         Bundle bundle = data.getExtras();
-        if (bundle != null && bundle.containsKey("google.message_id")) {
+        // Freegle: the same tap can be delivered again, e.g. when the activity is recreated
+        if (
+            bundle != null &&
+            bundle.containsKey("google.message_id") &&
+            SeenMessageIds.markSeen(getContext(), "tap:" + bundle.getString("google.message_id"))
+        ) {
             JSObject notificationJson = new JSObject();
             JSObject dataObject = new JSObject();
             for (String key : bundle.keySet()) {
@@ -103,7 +157,7 @@ public class PushNotificationsPlugin extends Plugin {
             JSObject actionJson = new JSObject();
             actionJson.put("actionId", "tap");
             actionJson.put("notification", notificationJson);
-            notifyListeners("pushNotificationActionPerformed", actionJson, true);
+            dispatchAction(actionJson);
         }
     }
 
@@ -151,37 +205,40 @@ public class PushNotificationsPlugin extends Plugin {
     public void unregister(PluginCall call) {
         FirebaseMessaging.getInstance().setAutoInitEnabled(false);
         FirebaseMessaging.getInstance().deleteToken();
+        // Freegle: the cached images are other users' photos; don't keep them after logout
+        NotificationImageLoader.get(getContext()).clearCache();
         call.resolve();
     }
 
     @PluginMethod
     public void getDeliveredNotifications(PluginCall call) {
-        JSArray notifications = new JSArray();
-        StatusBarNotification[] activeNotifications = notificationManager.getActiveNotifications();
-
-        for (StatusBarNotification notif : activeNotifications) {
-            JSObject jsNotif = new JSObject();
-
-            jsNotif.put("id", notif.getId());
-            jsNotif.put("tag", notif.getTag());
-
-            Notification notification = notif.getNotification();
-            if (notification != null) {
-                jsNotif.put("title", notification.extras.getCharSequence(Notification.EXTRA_TITLE));
-                jsNotif.put("body", notification.extras.getCharSequence(Notification.EXTRA_TEXT));
-                jsNotif.put("group", notification.getGroup());
-                jsNotif.put("groupSummary", 0 != (notification.flags & Notification.FLAG_GROUP_SUMMARY));
-
-                JSObject extras = new JSObject();
-
-                for (String key : notification.extras.keySet()) {
-                    extras.put(key, notification.extras.getString(key));
-                }
-
-                jsNotif.put("data", extras);
+        // Freegle: served from the delivered-notification index, filtered and projected as asked.
+        // Always reconciled with the system list first, so swiped-away notifications drop out.
+        DeliveredNotificationIndex.Filter filter = new DeliveredNotificationIndex.Filter();
+        filter.channelId = call.getString("channelId");
+        filter.category = call.getString("category");
+        filter.group = call.getString("group");
+        filter.chatId = call.getString("chatId");
+        JSObject dataFilter = call.getObject("data");
+        if (dataFilter != null) {
+            filter.data = new HashMap<>();
+            for (Iterator<String> keys = dataFilter.keys(); keys.hasNext();) {
+                String key = keys.next();
+                filter.data.put(key, dataFilter.isNull(key) ? null : dataFilter.getString(key));
+            }
+        }
+        Set<String> fields = null;
+        JSArray fieldList = call.getArray("fields");
+        if (fieldList != null) {
+            fields = new HashSet<>();
+            for (int i = 0; i < fieldList.length(); i++) {
+                fields.add(fieldList.optString(i));
             }
+        }
 
-            notifications.put(jsNotif);
+        JSArray notifications = new JSArray();
+        for (DeliveredNotificationIndex.Entry entry : DeliveredNotificationIndex.query(notificationManager, filter, true)) {
+            notifications.put(toDeliveredJson(entry, fields));
         }
 
         JSObject result = new JSObject();
@@ -189,6 +246,37 @@ public class PushNotificationsPlugin extends Plugin {
         call.resolve(result);
     }
 
+    // Freegle: one getDeliveredNotifications result, with only the requested fields (all if null)
+    private static JSObject toDeliveredJson(DeliveredNotificationIndex.Entry entry, Set<String> fields) {
+        JSObject json = new JSObject();
+        if (fields == null || fields.contains("id")) {
+            json.put("id", entry.id);
+        }
+        if (fields == null || fields.contains("tag")) {
+            json.put("tag", entry.tag);
+        }
+        if (fields == null || fields.contains("title")) {
+            json.put("title", entry.title);
+        }
+        if (fields == null || fields.contains("body")) {
+            json.put("body", entry.body);
+        }
+        if (fields == null || fields.contains("group")) {
+            json.put("group", entry.group);
+        }
+        if (fields == null || fields.contains("groupSummary")) {
+            json.put("groupSummary", entry.groupSummary);
+        }
+        if (fields == null || fields.contains("data")) {
+            JSObject data = new JSObject();
+            for (Map.Entry<String, String> field : entry.extras.entrySet()) {
+                data.put(field.getKey(), field.getValue());
+            }
+            json.put("data", data);
+        }
+        return json;
+    }
+
     @PluginMethod
     public void removeDeliveredNotifications(PluginCall call) {
         JSArray notifications = call.getArray("notifications");
@@ -201,9 +289,11 @@ public class PushNotificationsPlugin extends Plugin {
                     Integer id = notif.getInteger("id");
 
                     if (tag == null) {
-                        notificationManager.cancel(id);
+                        NotificationPoster.get(getContext()).cancel(id); // Freegle: also drops a waiting update
+                        NotificationHelper.clearChat(getContext(), id);
                     } else {
                         notificationManager.cancel(tag, id);
+                        DeliveredNotificationIndex.removed(tag, id); // Freegle
                     }
                 } else {
                     call.reject("Expected notifications to be a list of notification objects");
@@ -218,7 +308,8 @@ public class PushNotificationsPlugin extends Plugin {
 
     @PluginMethod
     public void removeAllDeliveredNotifications(PluginCall call) {
-        notificationManager.cancelAll();
+        NotificationPoster.get(getContext()).cancelAll(); // Freegle: also drops waiting updates
+        ChatHistoryStore.clearAll(getContext());
         call.resolve();
     }
 
@@ -239,12 +330,34 @@ public class PushNotificationsPlugin extends Plugin {
 
     @PluginMethod
     public void getBackgroundPushLog(PluginCall call) {
-        // Read debug log from SharedPreferences (written by MessagingService when app not running)
+        // Read debug log entries (written by MessagingService when app not running), optionally
+        // only those after a cursor returned by a previous call
         try {
-            android.content.SharedPreferences prefs = getContext().getSharedPreferences("push_debug", android.content.Context.MODE_PRIVATE);
-            String log = prefs.getString("log", "");
+            long since = call.getLong("since", -1L);
+            int limit = call.getInt("limit", Integer.MAX_VALUE);
+            List<BackgroundPushLog.Entry> entries = BackgroundPushLog.read(getContext(), since, limit);
+
+            StringBuilder log = new StringBuilder();
+            JSArray entriesJson = new JSArray();
+            long cursor = since;
+            for (BackgroundPushLog.Entry entry : entries) {
+                log.append(entry.text);
+                if (!entry.text.endsWith("\n")) {
+                    log.append('\n');
+                }
+                log.append("---\n");
+                JSObject entryJson = new JSObject();
+                entryJson.put("seq", entry.seq);
+                entryJson.put("time", entry.time);
+                entryJson.put("text", entry.text);
+                entriesJson.put(entryJson);
+                cursor = entry.seq;
+            }
+
             JSObject result = new JSObject();
-            result.put("log", log);
+            result.put("log", log.toString());
+            result.put("entries", entriesJson);
+            result.put("cursor", cursor);
             call.resolve(result);
         } catch (Exception e) {
             call.reject("Failed to read push debug log: " + e.getMessage());
@@ -255,14 +368,94 @@ public class PushNotificationsPlugin extends Plugin {
     public void clearBackgroundPushLog(PluginCall call) {
         // Clear the debug log
         try {
-            android.content.SharedPreferences prefs = getContext().getSharedPreferences("push_debug", android.content.Context.MODE_PRIVATE);
-            prefs.edit().putString("log", "").apply();
+            BackgroundPushLog.clear(getContext());
             call.resolve();
         } catch (Exception e) {
             call.reject("Failed to clear push debug log: " + e.getMessage());
         }
     }
 
+    // Freegle: Warm the native notification image cache from JS
+    @PluginMethod
+    public void prefetchImages(PluginCall call) {
+        JSArray images = call.getArray("images");
+        if (images == null) {
+            call.reject("Must provide images");
+            return;
+        }
+
+        boolean unmeteredOnly = call.getBoolean("unmeteredOnly", false);
+        long maxBytes = call.getInt("maxBytes", DEFAULT_PREFETCH_MAX_BYTES);
+
+        JSObject result = new JSObject();
+        if (!isPrefetchAllowed(unmeteredOnly)) {
+            result.put("queued", 0);
+            call.resolve(result);
+            return;
+        }
+
+        // Entries are either plain URL strings or { url, priority }; higher priority goes first.
+        List<String> urls = new ArrayList<>();
+        List<Integer> priorities = new ArrayList<>();
+        for (int i = 0; i < images.length() && urls.size() < MAX_PREFETCH_IMAGES; i++) {
+            Object entry = images.opt(i);
+            String url = null;
+            int priority = 0;
+            if (entry instanceof String) {
+                url = (String) entry;
+            } else if (entry instanceof JSONObject) {
+                url = ((JSONObject) entry).optString("url", null);
+                priority = ((JSONObject) entry).optInt("priority", 0);
+            }
+            if (PushPayloadParser.isHttpUrl(url) && !urls.contains(url)) {
+                urls.add(url);
+                priorities.add(priority);
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            order.add(i);
+        }
+        // Stable sort, so equal priorities keep the order JS gave them.
+        order.sort((a, b) -> Integer.compare(priorities.get(b), priorities.get(a)));
+        List<String> sorted = new ArrayList<>(urls.size());
+        for (int i : order) {
+            sorted.add(urls.get(i));
+        }
+
+        if (!sorted.isEmpty()) {
+            NotificationImageLoader.get(getContext()).prefetch(sorted, maxBytes);
+        }
+        result.put("queued", sorted.size());
+        call.resolve(result);
+    }
+
+    /**
+     * Prefetching is speculative, so skip it under Data Saver, and on metered networks if asked.
+     */
+    private boolean isPrefetchAllowed(boolean unmeteredOnly) {
+        ConnectivityManager connectivity = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) {
+            return false;
+        }
+        if (
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
+            connectivity.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED
+        ) {
+            return false;
+        }
+        return !unmeteredOnly || !connectivity.isActiveNetworkMetered();
+    }
+
+    // Freegle: Per-stage push timings and outcome counts since the last reset
+    @PluginMethod
+    public void getPushMetrics(PluginCall call) {
+        JSObject result = PushMetrics.snapshot(call.getBoolean("reset", true));
+        result.put("imageCache", NotificationImageCache.get(getContext()).getStats());
+        result.put("lanes", NotificationRenderPipeline.get(getContext()).laneStats(call.getBoolean("reset", true)));
+        call.resolve(result);
+    }
+
     public void sendToken(String token) {
         JSObject data = new JSObject();
         data.put("value", token);
@@ -277,7 +470,7 @@ public class PushNotificationsPlugin extends Plugin {
 
     // Freegle: Public method to send action performed events from NotificationActionReceiver
     public void sendActionPerformed(JSObject actionJson) {
-        notifyListeners("pushNotificationActionPerformed", actionJson, true);
+        dispatchAction(actionJson);
     }
 
     public static void onNewToken(String newToken) {
@@ -287,83 +480,94 @@ public class PushNotificationsPlugin extends Plugin {
         }
     }
 
+    /**
+     * @deprecated Use sendRemoteMessage(Context, RemoteMessage), which keeps the message on
+     * disk if the app isn't running. This one only holds it in lastMessage, like it used to.
+     */
+    @Deprecated
     public static boolean sendRemoteMessage(RemoteMessage remoteMessage) { // Freegle
         PushNotificationsPlugin pushPlugin = PushNotificationsPlugin.getPushNotificationsInstance();
         if (pushPlugin != null) {
-            pushPlugin.fireNotification(remoteMessage, true); // Freegle
+            return sendRemoteMessage(pushPlugin.getContext(), remoteMessage);
+        }
+        lastMessage = remoteMessage;
+        return false;
+    }
+
+    public static boolean sendRemoteMessage(Context context, RemoteMessage remoteMessage) { // Freegle
+        return sendRemoteMessage(context, remoteMessage, parse(remoteMessage));
+    }
+
+    static boolean sendRemoteMessage(Context context, RemoteMessage remoteMessage, PushPayload payload) { // Freegle
+        PushNotificationsPlugin pushPlugin = PushNotificationsPlugin.getPushNotificationsInstance();
+        if (pushPlugin != null) {
+            pushPlugin.fireNotification(remoteMessage, payload, true); // Freegle
             return true;  // Foreground or Background // Freegle
         } else {
-            lastMessage = remoteMessage;
+            // Freegle: Keep it on disk until load() can hand it to JS; a cancel is only for us
+            if (payload.validity != PushPayloadParser.Validity.CANCEL) {
+                PendingMessageQueue.append(context, payload.messageId, payload.data);
+            }
             return false; // Not running // Freegle
         }
     }
 
     public void fireNotification(RemoteMessage remoteMessage, Boolean foreground) { // Freegle
-        JSObject remoteMessageData = new JSObject();
+        fireNotification(remoteMessage, parse(remoteMessage), foreground);
+    }
 
-        JSObject data = new JSObject();
-        remoteMessageData.put("id", remoteMessage.getMessageId());
-        for (String key : remoteMessage.getData().keySet()) {
-            Object value = remoteMessage.getData().get(key);
-            data.put(key, value);
+    // Freegle: parse and validate once, timed as the VALIDATION stage
+    private static PushPayload parse(RemoteMessage remoteMessage) {
+        long validationStart = PushMetrics.start();
+        PushPayload payload = PushPayload.from(remoteMessage.getMessageId(), remoteMessage.getData());
+        PushMetrics.record(PushMetrics.Stage.VALIDATION, validationStart);
+        return payload;
+    }
+
+    void fireNotification(RemoteMessage remoteMessage, PushPayload payload, boolean foreground) { // Freegle
+        // Freegle: a cancel only removes notifications; it isn't a notification JS should see
+        if (payload.validity == PushPayloadParser.Validity.CANCEL) {
+            NotificationRenderPipeline.get(getContext()).submit(payload);
+            return;
         }
-        data.put("foreground", foreground); // Freegle
-        remoteMessageData.put("data", data);
+        JSObject remoteMessageData = toReceivedEvent(payload.messageId, payload.data, foreground);
 
         // FREEGLE: Use centralized notification helper for consistent display
-        // This ensures same behavior whether app is foregrounded or backgrounded
-        Map<String, String> msgdata = remoteMessage.getData();
-        if (msgdata != null) {
-            NotificationHelper.createAndShowNotification(getContext(), msgdata);
-        }
+        // This ensures same behavior whether app is foregrounded or backgrounded.
+        // Rendering is queued on the render pipeline so the JS event isn't held up by images.
+        NotificationRenderPipeline.get(getContext()).submit(payload);
         // ..Freegle
 
         // FREEGLE: Skip Firebase's default notification handling
         // We only use data-only notifications with channel_id
         // Legacy notifications (with notification field, no channel_id) are ignored
         RemoteMessage.Notification notification = remoteMessage.getNotification();
-        if (notification != null && msgdata != null && msgdata.get("channel_id") != null) {
+        if (notification != null && payload.channelId != null) {
             String title = notification.getTitle();
             String body = notification.getBody();
-            String[] presentation = getConfig().getArray("presentationOptions");
-            if (presentation != null) {
-                if (Arrays.asList(presentation).contains("alert")) {
-                    Bundle bundle = null;
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                        try {
-                            ApplicationInfo applicationInfo = getContext()
-                                .getPackageManager()
-                                .getApplicationInfo(
-                                    getContext().getPackageName(),
-                                    PackageManager.ApplicationInfoFlags.of(PackageManager.GET_META_DATA)
-                                );
-                            bundle = applicationInfo.metaData;
-                        } catch (PackageManager.NameNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                    } else {
-                        bundle = getBundleLegacy();
-                    }
-
-                    if (bundle != null) {
-                        NotificationParams params = new NotificationParams(remoteMessage.toIntent().getExtras());
-
-                        String channelId = CommonNotificationBuilder.getOrCreateChannel(
-                            getContext(),
-                            params.getNotificationChannelId(),
-                            bundle
-                        );
-
-                        CommonNotificationBuilder.DisplayNotificationInfo notificationInfo = CommonNotificationBuilder.createNotificationInfo(
-                            getContext(),
-                            getContext(),
-                            params,
-                            channelId,
-                            bundle
-                        );
-
-                        notificationManager.notify(notificationInfo.tag, notificationInfo.id, notificationInfo.notificationBuilder.build());
-                    }
+            // Freegle: manifest metadata comes from the shared, cached environment
+            if (presentsAlert) {
+                Bundle bundle = PushEnvironment.get(getContext()).metaData;
+                if (bundle != null) {
+                    NotificationParams params = new NotificationParams(remoteMessage.toIntent().getExtras());
+
+                    String channelId = CommonNotificationBuilder.getOrCreateChannel(
+                        getContext(),
+                        params.getNotificationChannelId(),
+                        bundle
+                    );
+
+                    CommonNotificationBuilder.DisplayNotificationInfo notificationInfo = CommonNotificationBuilder.createNotificationInfo(
+                        getContext(),
+                        getContext(),
+                        params,
+                        channelId,
+                        bundle
+                    );
+
+                    Notification posted = notificationInfo.notificationBuilder.build();
+                    notificationManager.notify(notificationInfo.tag, notificationInfo.id, posted);
+                    DeliveredNotificationIndex.posted(notificationInfo.tag, notificationInfo.id, posted); // Freegle
                 }
             }
             remoteMessageData.put("title", title);
@@ -376,8 +580,46 @@ public class PushNotificationsPlugin extends Plugin {
             }
         }
 
+        dispatchReceived(remoteMessageData);
+    }
+
+    // Freegle..
+    /**
+     * The pushNotificationReceived event for a message's id and data.
+     */
+    private static JSObject toReceivedEvent(String id, Map<String, String> msgdata, boolean foreground) {
+        JSObject remoteMessageData = new JSObject();
+
+        JSObject data = new JSObject();
+        remoteMessageData.put("id", id);
+        if (msgdata != null) {
+            for (Map.Entry<String, String> entry : msgdata.entrySet()) {
+                data.put(entry.getKey(), entry.getValue());
+            }
+        }
+        data.put("foreground", foreground);
+        remoteMessageData.put("data", data);
+        return remoteMessageData;
+    }
+
+    private void dispatchReceived(JSObject remoteMessageData) {
+        if (eventBatcher != null) {
+            eventBatcher.addReceived(remoteMessageData);
+            return;
+        }
+        long dispatchStart = PushMetrics.start();
         notifyListeners("pushNotificationReceived", remoteMessageData, true);
+        PushMetrics.record(PushMetrics.Stage.JS_DISPATCH, dispatchStart);
+    }
+
+    private void dispatchAction(JSObject actionJson) { // Freegle
+        if (eventBatcher != null) {
+            eventBatcher.addAction(actionJson);
+            return;
+        }
+        notifyListeners("pushNotificationActionPerformed", actionJson, true);
     }
+    // ..Freegle
 
     public static PushNotificationsPlugin getPushNotificationsInstance() {
         if (staticBridge != null && staticBridge.getWebView() != null) {
@@ -395,19 +637,6 @@ public class PushNotificationsPlugin extends Plugin {
         this.checkPermissions(call);
     }
 
-    @SuppressWarnings("deprecation")
-    private Bundle getBundleLegacy() {
-        try {
-            ApplicationInfo applicationInfo = getContext()
-                .getPackageManager()
-                .getApplicationInfo(getContext().getPackageName(), PackageManager.GET_META_DATA);
-            return applicationInfo.metaData;
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
     // Freegle..
     /**
      * Add action buttons to a notification based on the category.
@@ -415,20 +644,36 @@ public class PushNotificationsPlugin extends Plugin {
      * NEW_POSTS and all other categories are passive — no action buttons are added.
      * Unknown/future categories also receive no action buttons (safe by default).
      */
+    static void addNotificationActions(Context context, Notification.Builder builder, PushPayload payload, Bundle payloadExtras) {
+        addNotificationActions(context, builder, payload.category, payloadExtras, payload.notId);
+    }
+
+    /**
+     * @deprecated Kept for host apps that build their own notifications; the plugin itself
+     * passes the parsed payload.
+     */
+    @Deprecated
     public static void addNotificationActions(Context context, Notification.Builder builder,
             String category, Map<String, String> msgdata, int notificationId) {
-        if (category == null || !CATEGORY_CHAT_MESSAGE.equals(category)) {
+        if (!CATEGORY_CHAT_MESSAGE.equals(category)) {
+            return;
+        }
+        Bundle payloadExtras = new Bundle();
+        PushPayloadParser.copyExtras(msgdata, payloadExtras::putString);
+        addNotificationActions(context, builder, category, payloadExtras, notificationId);
+    }
+
+    /**
+     * payloadExtras is the payload Bundle already kept with the notification; all three
+     * intents carry that same Bundle rather than a copy each.
+     */
+    private static void addNotificationActions(Context context, Notification.Builder builder,
+            String category, Bundle payloadExtras, int notificationId) {
+        if (!CATEGORY_CHAT_MESSAGE.equals(category)) {
             return; // Only CHAT_MESSAGE gets action buttons; NEW_POSTS and others are passive
         }
 
         try {
-            // Create bundle with notification data for the actions
-            Bundle notificationDataBundle = new Bundle();
-            if (msgdata != null) {
-                for (Map.Entry<String, String> entry : msgdata.entrySet()) {
-                    notificationDataBundle.putString(entry.getKey(), entry.getValue());
-                }
-            }
 
             // Reply action with RemoteInput for text
             RemoteInput remoteInput = new RemoteInput.Builder(NotificationActionReceiver.KEY_TEXT_REPLY)
@@ -437,12 +682,12 @@ public class PushNotificationsPlugin extends Plugin {
 
             Intent replyIntent = new Intent(context, NotificationActionReceiver.class);
             replyIntent.setAction(NotificationActionReceiver.ACTION_REPLY);
-            replyIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, notificationDataBundle);
+            replyIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, payloadExtras);
             replyIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_ID, notificationId);
 
             PendingIntent replyPendingIntent = PendingIntent.getBroadcast(
                     context,
-                    notificationId * 10 + 1, // Unique request code
+                    PushPayloadParser.actionRequestCode(notificationId, 1), // Unique request code
                     replyIntent,
                     PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE
             );
@@ -460,12 +705,12 @@ public class PushNotificationsPlugin extends Plugin {
             // Mark Read action
             Intent markReadIntent = new Intent(context, NotificationActionReceiver.class);
             markReadIntent.setAction(NotificationActionReceiver.ACTION_MARK_READ);
-            markReadIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, notificationDataBundle);
+            markReadIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, payloadExtras);
             markReadIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_ID, notificationId);
 
             PendingIntent markReadPendingIntent = PendingIntent.getBroadcast(
                     context,
-                    notificationId * 10 + 2, // Unique request code
+                    PushPayloadParser.actionRequestCode(notificationId, 2), // Unique request code
                     markReadIntent,
                     PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
             );
@@ -482,12 +727,12 @@ public class PushNotificationsPlugin extends Plugin {
             // View action - opens the app to the chat
             Intent viewIntent = new Intent(context, NotificationActionReceiver.class);
             viewIntent.setAction(NotificationActionReceiver.ACTION_VIEW);
-            viewIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, notificationDataBundle);
+            viewIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_DATA, payloadExtras);
             viewIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_ID, notificationId);
 
             PendingIntent viewPendingIntent = PendingIntent.getBroadcast(
                     context,
-                    notificationId * 10 + 3, // Unique request code
+                    PushPayloadParser.actionRequestCode(notificationId, 3), // Unique request code
                     viewIntent,
                     PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
             );
@@ -501,9 +746,9 @@ public class PushNotificationsPlugin extends Plugin {
 
             builder.addAction(viewAction);
 
-            Log.d("PushNotifications", "Added Reply, Mark Read, and View actions for category: " + category);
+            PushLog.d("PushNotifications", "Added Reply, Mark Read, and View actions for category: ", category);
         } catch (Exception e) {
-            Log.e("PushNotifications", "Error adding notification actions: " + e.getMessage());
+            PushLog.e("PushNotifications", "Error adding notification actions", e);
         }
     }
     // ..Freegle
@@ -0,0 +1,223 @@
+/* FREEGLE: Parse-once, immutable view of a push payload */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.json.JSONException;
+
+/**
+ * One push message, validated and with its scalar fields parsed once, when it arrives.
+ *
+ * The same payload used to be re-read in each place that handled it: fireNotification,
+ * createAndShowNotification, applyNewPostsStyle, addNotificationActions and
+ * NotificationActionReceiver each pulled fields out of the map and parsed count, notId and
+ * the JSON arrays again. A PushPayload is built once per message, in MessagingService,
+ * fireNotification, the render job or the action receiver, and passed along instead. The
+ * "lines" and "images" arrays are only parsed if a renderer asks for them, with
+ * PushPayloadParser's streaming reader, and the result is kept.
+ *
+ * Like PushPayloadParser this is free of Android types so it can be benchmarked on a
+ * desktop JVM.
+ */
+final class PushPayload {
+
+    /** Most URLs kept from "images"; callers ask for at most this many. */
+    static final int MAX_IMAGE_URLS = 8;
+    /** timestampMs when there's a "timestamp" field but it isn't a number. */
+    static final long INVALID_TIMESTAMP = -1;
+    // PushNotificationsPlugin.CATEGORY_NEW_POSTS, without the dependency on the plugin
+    private static final String NEW_POSTS = "NEW_POSTS";
+
+    /** FCM message id, or null if unknown (e.g. a render job or an action). */
+    final String messageId;
+    /** The raw payload, unmodifiable. */
+    final Map<String, String> data;
+    final PushPayloadParser.Validity validity;
+
+    final String channelId;
+    final String title;
+    final String message;
+    final String category;
+    final String image;
+    final String summary;
+    /** Optional: the chat a CHAT_MESSAGE belongs to. */
+    final String chatId;
+    /** Optional: who sent a CHAT_MESSAGE. */
+    final String sender;
+    /** count and notId: 0 unless validity is VALID. */
+    final int count;
+    final int notId;
+    /** "timestamp" in milliseconds: 0 if absent, INVALID_TIMESTAMP if not a number. */
+    final long timestampMs;
+    /** "moreCount": 0 if absent, PushPayloadParser.INVALID_COUNT if not a number. */
+    final int moreCount;
+    /** What a CANCEL payload removes; null fields match anything. */
+    final String cancelChatId;
+    final String cancelCategory;
+    final String cancelGroup;
+
+    // Parsed on first use; guarded by this
+    private List<String> lines;
+    private List<String> imageUrls;
+    private String renderKey;
+
+    private PushPayload(String messageId, Map<String, String> data) {
+        this.messageId = messageId;
+        this.data = Collections.unmodifiableMap(data);
+        channelId = data.get("channel_id");
+        title = data.get("title");
+        message = data.get("message");
+        category = data.get("category");
+        image = data.get("image");
+        summary = data.get("summary");
+        chatId = data.get("chatid");
+        sender = data.get("sender");
+        moreCount = PushPayloadParser.parseMoreCount(data.get("moreCount"));
+        timestampMs = parseTimestamp(data.get("timestamp"));
+        cancelChatId = emptyToNull(data.get("cancelChatId"));
+        cancelCategory = emptyToNull(data.get("cancelCategory"));
+        cancelGroup = emptyToNull(data.get("cancelGroup"));
+
+        PushPayloadParser.Validity checked = PushPayloadParser.validate(data);
+        int parsedCount = 0;
+        int parsedNotId = 0;
+        if (checked == PushPayloadParser.Validity.VALID) {
+            try {
+                parsedCount = Integer.parseInt(data.get("count"));
+                parsedNotId = Integer.parseInt(data.get("notId"));
+            } catch (NumberFormatException e) {
+                checked = PushPayloadParser.Validity.MALFORMED;
+            }
+        }
+        validity = checked;
+        count = parsedCount;
+        notId = parsedNotId;
+    }
+
+    /**
+     * Build the payload for a message. data is copied; null is taken as empty.
+     */
+    static PushPayload from(String messageId, Map<String, String> data) {
+        return new PushPayload(messageId, data != null ? new HashMap<>(data) : new HashMap<>());
+    }
+
+    String get(String key) {
+        return data.get(key);
+    }
+
+    boolean isCategory(String name) {
+        return name.equals(category);
+    }
+
+    /**
+     * Non-empty entries of "lines", parsed on first call.
+     */
+    synchronized List<String> lines() throws JSONException {
+        if (lines == null) {
+            lines = Collections.unmodifiableList(PushPayloadParser.parseLines(data.get("lines")));
+        }
+        return lines;
+    }
+
+    /**
+     * Up to max (at most MAX_IMAGE_URLS) http(s) URLs from "images", parsed on first call.
+     */
+    synchronized List<String> imageUrls(int max) throws JSONException {
+        if (imageUrls == null) {
+            imageUrls = Collections.unmodifiableList(PushPayloadParser.parseImageUrls(data.get("images"), MAX_IMAGE_URLS));
+        }
+        return imageUrls.size() <= max ? imageUrls : imageUrls.subList(0, max);
+    }
+
+    /**
+     * True if the notification has any remote image to wait for: the "image" field, plus
+     * "images" for NEW_POSTS.
+     */
+    boolean hasImages() {
+        if (PushPayloadParser.isHttpUrl(image)) {
+            return true;
+        }
+        if (!isCategory(NEW_POSTS)) {
+            return false;
+        }
+        try {
+            return !imageUrls(1).isEmpty();
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copy every payload entry into sink, e.g. the extras of notification action intents.
+     */
+    void copyTo(PushPayloadParser.ExtrasSink sink) {
+        PushPayloadParser.copyExtras(data, sink);
+    }
+
+    /**
+     * Identifies this payload's render: the same notId and content give the same key, and
+     * different content a different one. It is built from the content rather than the FCM
+     * message id, which a render job doesn't have. A 32-bit hash isn't enough here: two
+     * payloads for the same notId that collided would be merged into one render.
+     */
+    synchronized String renderKey() {
+        if (renderKey == null) {
+            renderKey = data.get("notId") + "|" + contentDigest(data);
+        }
+        return renderKey;
+    }
+
+    /**
+     * SHA-256 of data's entries in key order, each part length-prefixed so no two different
+     * maps give the same input.
+     */
+    private static String contentDigest(Map<String, String> data) {
+        StringBuilder canonical = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(data).entrySet()) {
+            appendPart(canonical, entry.getKey());
+            appendPart(canonical, entry.getValue());
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return canonical.toString(); // every JVM and Android has SHA-256
+        }
+        byte[] hash = digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void appendPart(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("-1:");
+        } else {
+            sb.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(timestamp) * 1000; // seconds on the wire
+        } catch (NumberFormatException e) {
+            return INVALID_TIMESTAMP;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/* FREEGLE: Device-independent parsing of Freegle push payloads */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The parts of reading a push payload that don't touch the Android framework: required-field
+ * validation, the NEW_POSTS "lines", "images" and "moreCount" fields, and copying the payload
+ * into action extras. Kept free of Android types (org.json aside) so it can be benchmarked on
+ * a desktop JVM (see android/benchmark).
+ */
+final class PushPayloadParser {
+
+    enum Validity {
+        VALID,
+        /** No channel_id: sent for old app versions, which show their own notification. */
+        LEGACY,
+        MISSING_FIELDS,
+        /** All fields present, but count or notId isn't a number (set by PushPayload). */
+        MALFORMED,
+        /** Has cancelChatId, cancelCategory or cancelGroup: remove matching notifications, show nothing. */
+        CANCEL
+    }
+
+    /** Receives payload entries; lets Bundle.putString be used without depending on Bundle. */
+    interface ExtrasSink {
+        void putString(String key, String value);
+    }
+
+    /** Returned by parseMoreCount for a value that isn't a number. */
+    static final int INVALID_COUNT = -1;
+
+    private PushPayloadParser() {}
+
+    /**
+     * Whether msgdata has a channel_id and the title, message, count and notId fields every
+     * notification needs. count and notId are not parsed here.
+     */
+    static Validity validate(Map<String, String> msgdata) {
+        if (isSet(msgdata.get("cancelChatId")) || isSet(msgdata.get("cancelCategory")) || isSet(msgdata.get("cancelGroup"))) {
+            return Validity.CANCEL;
+        }
+        String channelId = msgdata.get("channel_id");
+        if (channelId == null || channelId.isEmpty()) {
+            return Validity.LEGACY;
+        }
+        if (msgdata.get("title") == null || msgdata.get("message") == null
+            || msgdata.get("count") == null || msgdata.get("notId") == null) {
+            return Validity.MISSING_FIELDS;
+        }
+        return Validity.VALID;
+    }
+
+    private static boolean isSet(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    /**
+     * The "moreCount" value: 0 if absent or empty, INVALID_COUNT if not a number.
+     */
+    static int parseMoreCount(String moreCount) {
+        if (moreCount == null || moreCount.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(moreCount);
+        } catch (NumberFormatException e) {
+            return INVALID_COUNT;
+        }
+    }
+
+    /**
+     * Non-empty entries of the "lines" JSON array, in order.
+     */
+    static List<String> parseLines(String linesJson) throws JSONException {
+        return parseStrings(linesJson, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Up to max http(s) URLs from the "images" JSON array, in order.
+     */
+    static List<String> parseImageUrls(String imagesJson, int max) throws JSONException {
+        return parseStrings(imagesJson, max, true);
+    }
+
+    /**
+     * Reads the elements of a JSON array one at a time with a JSONTokener, instead of building
+     * a JSONArray first, and stops as soon as max have been kept; the rest isn't looked at.
+     * Elements are taken as JSONArray.optString would give them; nulls and empty strings (and,
+     * with httpOnly, anything but an http(s) URL) are skipped.
+     */
+    private static List<String> parseStrings(String json, int max, boolean httpOnly) throws JSONException {
+        if (json == null || json.isEmpty() || max <= 0) {
+            return Collections.emptyList();
+        }
+        JSONTokener tokener = new JSONTokener(json);
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("Expected a JSON array");
+        }
+        List<String> values = new ArrayList<>(Math.min(max, 8));
+        if (tokener.nextClean() == ']') {
+            return values;
+        }
+        tokener.back();
+        while (values.size() < max) {
+            Object element = tokener.nextValue();
+            if (!JSONObject.NULL.equals(element)) {
+                String value = element.toString();
+                if (httpOnly ? isHttpUrl(value) : !value.isEmpty()) {
+                    values.add(value);
+                }
+            }
+            char next = tokener.nextClean();
+            if (next == ']') {
+                break;
+            }
+            if (next != ',') {
+                throw tokener.syntaxError("Expected ',' or ']'");
+            }
+        }
+        return values;
+    }
+
+    static boolean isHttpUrl(String url) {
+        return url != null && (url.startsWith("https://") || url.startsWith("http://"));
+    }
+
+    /**
+     * True if the notification has any remote image to wait for: imageUrl is an http(s) URL,
+     * or imagesJson is an array with at least one. Only reads imagesJson up to the first URL.
+     */
+    static boolean hasImages(String imageUrl, String imagesJson) {
+        if (isHttpUrl(imageUrl)) {
+            return true;
+        }
+        try {
+            return !parseImageUrls(imagesJson, 1).isEmpty();
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copy every payload entry into sink, for the extras of notification action intents.
+     */
+    static void copyExtras(Map<String, String> msgdata, ExtrasSink sink) {
+        if (msgdata == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : msgdata.entrySet()) {
+            sink.putString(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * PendingIntent request code for the slot'th action button of notification notId.
+     */
+    static int actionRequestCode(int notId, int slot) {
+        return notId * 10 + slot;
+    }
+}
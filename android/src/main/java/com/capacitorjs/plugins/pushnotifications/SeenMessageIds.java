@@ -0,0 +1,131 @@
+/* FREEGLE: Bounded, persisted set of recently handled FCM message ids */
+
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.content.Context;
+import androidx.annotation.VisibleForTesting;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Ids of the last MAX_IDS messages handled, so a message FCM delivers twice (or a tap
+ * re-emitted for the same message) is dropped before any rendering or bridge work.
+ *
+ * The set is held in memory, oldest first, and mirrored to a file with one id per line.
+ * Adding an id appends a line; once the file holds more than 2 * MAX_IDS lines it is rewritten
+ * with the ids still in the set, so the check stays a hash lookup and the write a single
+ * small append. Like PendingMessageQueue the file isn't fsynced.
+ */
+class SeenMessageIds {
+
+    private static final String TAG = "SeenMessageIds";
+    private static final String DIR = "push_seen";
+    private static final String FILE = "ids.txt";
+    static final int MAX_IDS = 500;
+
+    private static File file;
+    private static LinkedHashSet<String> ids;
+    private static int lines;
+
+    private SeenMessageIds() {}
+
+    /**
+     * Forget what's held in memory, as a process restart would.
+     */
+    @VisibleForTesting
+    static synchronized void unload() {
+        file = null;
+        ids = null;
+        lines = 0;
+    }
+
+    /**
+     * Record id as handled. Returns false if it already was, i.e. this is a duplicate.
+     * A null or empty id can't be checked and is always treated as new.
+     */
+    static synchronized boolean markSeen(Context context, String id) {
+        if (id == null || id.isEmpty()) {
+            return true;
+        }
+        load(context);
+        if (ids.contains(id)) {
+            return false;
+        }
+        ids.add(id);
+        if (ids.size() > MAX_IDS) {
+            Iterator<String> oldest = ids.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        try {
+            if (++lines > 2 * MAX_IDS) {
+                rewrite();
+            } else {
+                try (OutputStream out = new FileOutputStream(file, true)) {
+                    out.write((id + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to store message id", e);
+        }
+        return true;
+    }
+
+    private static void load(Context context) {
+        if (ids != null) {
+            return;
+        }
+        ids = new LinkedHashSet<>();
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            PushLog.e(TAG, "Cannot create " + dir);
+        }
+        file = new File(dir, FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (!line.isEmpty()) {
+                    ids.remove(line); // re-insert so a repeat counts as recent
+                    ids.add(line);
+                }
+            }
+        } catch (IOException e) {
+            PushLog.e(TAG, "Failed to read message ids", e);
+        }
+        while (ids.size() > MAX_IDS) {
+            Iterator<String> oldest = ids.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private static void rewrite() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String id : ids) {
+            sb.append(id).append('\n');
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+        lines = ids.size();
+    }
+}
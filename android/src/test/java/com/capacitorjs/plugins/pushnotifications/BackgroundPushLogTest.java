@@ -0,0 +1,85 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackgroundPushLogTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        BackgroundPushLog.unload();
+        BackgroundPushLog.clear(context);
+    }
+
+    @Test
+    public void cursorPagesThroughEntries() {
+        for (int i = 0; i < 5; i++) {
+            BackgroundPushLog.append(context, "entry " + i);
+        }
+        List<BackgroundPushLog.Entry> first = BackgroundPushLog.read(context, -1, 3);
+        assertEquals(3, first.size());
+        assertEquals("entry 0", first.get(0).text);
+        List<BackgroundPushLog.Entry> rest = BackgroundPushLog.read(context, first.get(2).seq, 10);
+        assertEquals(2, rest.size());
+        assertEquals("entry 3", rest.get(0).text);
+        assertEquals(first.get(2).seq + 1, rest.get(0).seq);
+    }
+
+    @Test
+    public void lineBreaksStayInsideOneEntry() {
+        BackgroundPushLog.append(context, "one\ntwo\r\nthree\\n");
+        BackgroundPushLog.unload();
+        List<BackgroundPushLog.Entry> entries = BackgroundPushLog.read(context, -1, 10);
+        assertEquals(1, entries.size());
+        assertEquals("one\ntwo\r\nthree\\n", entries.get(0).text);
+    }
+
+    @Test
+    public void rotationKeepsTheNewestEntries() {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            big.append('x');
+        }
+        int count = 300; // about 300KB: several segments' worth
+        for (int i = 0; i < count; i++) {
+            BackgroundPushLog.append(context, i + " " + big);
+        }
+        List<BackgroundPushLog.Entry> entries = BackgroundPushLog.read(context, -1, count);
+        assertTrue(entries.size() < count);
+        assertTrue(entries.size() > 0);
+        BackgroundPushLog.Entry last = entries.get(entries.size() - 1);
+        assertTrue(last.text.startsWith((count - 1) + " "));
+        for (int i = 1; i < entries.size(); i++) {
+            assertEquals(entries.get(i - 1).seq + 1, entries.get(i).seq);
+        }
+    }
+
+    @Test
+    public void cursorsSurviveClearAndRestart() {
+        BackgroundPushLog.append(context, "before");
+        long cursor = BackgroundPushLog.read(context, -1, 10).get(0).seq;
+
+        BackgroundPushLog.clear(context);
+        BackgroundPushLog.unload();
+        BackgroundPushLog.append(context, "after");
+
+        List<BackgroundPushLog.Entry> entries = BackgroundPushLog.read(context, cursor, 10);
+        assertEquals(1, entries.size());
+        assertEquals("after", entries.get(0).text);
+        assertTrue(entries.get(0).seq > cursor);
+    }
+}
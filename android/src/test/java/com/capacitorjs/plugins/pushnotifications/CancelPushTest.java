@@ -0,0 +1,43 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import com.google.firebase.messaging.RemoteMessage;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class CancelPushTest {
+
+    private final Context context = RuntimeEnvironment.getApplication();
+
+    @Test
+    public void cancelIsNotDispatchedToJs() {
+        PushStormHarness.HarnessPlugin plugin = new PushStormHarness.HarnessPlugin(context);
+        RemoteMessage message = cancel("cancel-js");
+        plugin.fireNotification(message, PushPayload.from(message.getMessageId(), message.getData()), true);
+        assertEquals(0, plugin.events.get());
+    }
+
+    @Test
+    public void cancelIsNotQueuedWhileAppIsClosed() {
+        PendingMessageQueue.unload();
+        assertFalse(PushNotificationsPlugin.sendRemoteMessage(context, cancel("cancel-queue")));
+        assertTrue(PendingMessageQueue.drain(context).isEmpty());
+    }
+
+    private static RemoteMessage cancel(String id) {
+        Map<String, String> data = new HashMap<>();
+        data.put("cancelChatId", "42");
+        return new RemoteMessage.Builder("cancel@fcm.googleapis.com").setMessageId(id).setData(data).build();
+    }
+}
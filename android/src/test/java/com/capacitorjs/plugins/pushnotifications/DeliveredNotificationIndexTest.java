@@ -0,0 +1,99 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Bundle;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DeliveredNotificationIndexTest {
+
+    private Context context;
+    private NotificationManager notificationManager;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.createNotificationChannel(new NotificationChannel("chat", "Chat", NotificationManager.IMPORTANCE_HIGH));
+        DeliveredNotificationIndex.clear();
+    }
+
+    @Test
+    public void refreshPicksUpNotificationsPostedElsewhere() {
+        Bundle extras = new Bundle();
+        extras.putString("link", "/chats/1");
+        notificationManager.notify("fcm", 5, notification("From FCM", null, extras));
+
+        List<DeliveredNotificationIndex.Entry> entries = DeliveredNotificationIndex.query(notificationManager, null, true);
+        assertEquals(1, entries.size());
+        DeliveredNotificationIndex.Entry entry = entries.get(0);
+        assertEquals("fcm", entry.tag);
+        assertEquals("From FCM", entry.title);
+        assertEquals("/chats/1", entry.extras.get("link"));
+        assertTrue(entry.payload.isEmpty());
+        assertNull(entry.category);
+    }
+
+    @Test
+    public void filtersMatchThePayloadAndDataKeepsTheExtras() {
+        Bundle chatPayload = new Bundle();
+        chatPayload.putString("category", "CHAT_MESSAGE");
+        chatPayload.putString("chatid", "42");
+        Bundle digestPayload = new Bundle();
+        digestPayload.putString("category", "NEW_POSTS");
+        post(1, notification("Chat", chatPayload, null));
+        post(2, notification("Digest", digestPayload, null));
+
+        DeliveredNotificationIndex.Filter chats = new DeliveredNotificationIndex.Filter();
+        chats.chatId = "42";
+        List<DeliveredNotificationIndex.Entry> entries = DeliveredNotificationIndex.query(notificationManager, chats, true);
+        assertEquals(1, entries.size());
+        assertEquals(1, entries.get(0).id);
+        assertEquals("CHAT_MESSAGE", entries.get(0).category);
+        // The payload is a Bundle extra, so it isn't among the string extras returned as data
+        assertNull(entries.get(0).extras.get("chatid"));
+
+        DeliveredNotificationIndex.Filter digests = new DeliveredNotificationIndex.Filter();
+        digests.category = "NEW_POSTS";
+        assertEquals(2, DeliveredNotificationIndex.query(notificationManager, digests, true).get(0).id);
+    }
+
+    @Test
+    public void removedEntriesAreGone() {
+        post(3, notification("Gone soon", null, null));
+        notificationManager.cancel(3);
+        DeliveredNotificationIndex.removed(null, 3);
+        assertTrue(DeliveredNotificationIndex.query(notificationManager, null, true).isEmpty());
+    }
+
+    private void post(int id, Notification notification) {
+        notificationManager.notify(id, notification);
+        DeliveredNotificationIndex.posted(null, id, notification);
+    }
+
+    private Notification notification(String title, Bundle payload, Bundle extras) {
+        Notification.Builder builder = new Notification.Builder(context, "chat")
+            .setContentTitle(title)
+            .setSmallIcon(android.R.drawable.ic_dialog_info);
+        Bundle all = extras != null ? new Bundle(extras) : new Bundle();
+        if (payload != null) {
+            all.putBundle(DeliveredNotificationIndex.EXTRA_PAYLOAD, payload);
+        }
+        builder.addExtras(all);
+        return builder.build();
+    }
+}
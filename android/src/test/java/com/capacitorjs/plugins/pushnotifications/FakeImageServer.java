@@ -0,0 +1,142 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Loopback HTTP server for notification images, with injectable latency and failures.
+ *
+ * GET /img/{n}.png returns a PNG whose size and colour depend on n. Each request waits
+ * latencyMs plus up to jitterMs, then fails with probability failureRate (alternating between
+ * a 503 and a dropped connection), otherwise answers 200 with an ETag and a short max-age.
+ */
+class FakeImageServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+    private final Random random = new Random(42);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final Map<Integer, byte[]> bodies = new ConcurrentHashMap<>();
+
+    private volatile long latencyMs;
+    private volatile long jitterMs;
+    private volatile double failureRate;
+
+    FakeImageServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/img/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    FakeImageServer latency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        return this;
+    }
+
+    FakeImageServer failureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    int failures() {
+        return failures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            long delay = latencyMs;
+            double roll;
+            synchronized (random) {
+                delay += jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0;
+                roll = random.nextDouble();
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (roll < failureRate) {
+                if (failures.incrementAndGet() % 2 == 0) {
+                    exchange.close(); // dropped connection
+                    return;
+                }
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            int n = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1, path.lastIndexOf('.')));
+            String etag = "\"img-" + n + "\"";
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = bodies.computeIfAbsent(n, FakeImageServer::png);
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(404, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** A photo-sized PNG, landscape or portrait depending on n. */
+    private static byte[] png(int n) {
+        int w = n % 2 == 0 ? 800 : 600;
+        int h = n % 2 == 0 ? 600 : 800;
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(Color.HSBtoRGB((n * 37 % 360) / 360f, 0.6f, 0.9f)));
+        g.fillRect(0, 0, w, h);
+        g.setColor(Color.WHITE);
+        g.fillOval(w / 4, h / 4, w / 2, h / 2);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,94 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * ImageHttpClient against FakeImageServer on the loopback interface.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ImageHttpClientTest {
+
+    private FakeImageServer server;
+    private ImageHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeImageServer();
+        client = new ImageHttpClient(2000, 2000, 2, NotificationImageDecoder.MAX_ENCODED_BYTES);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void fetchReturnsBodyAndValidators() throws IOException {
+        ImageHttpClient.Response response = client.fetch(server.baseUrl() + "/img/1.png", null, null);
+        assertEquals(200, response.code);
+        assertNotNull(response.body);
+        assertTrue(response.body.length > 0);
+        assertEquals("\"img-1\"", response.etag);
+        assertEquals(60_000, response.maxAgeMs);
+    }
+
+    @Test
+    public void matchingEtagGetsNotModifiedWithoutBody() throws IOException {
+        ImageHttpClient.Response first = client.fetch(server.baseUrl() + "/img/2.png", null, null);
+        ImageHttpClient.Response second = client.fetch(server.baseUrl() + "/img/2.png", first.etag, null);
+        assertTrue(second.isNotModified());
+        assertNull(second.body);
+        assertEquals(2, server.requests());
+    }
+
+    @Test
+    public void serverErrorIsAnIOException() {
+        server.failureRate(1);
+        try {
+            client.fetch(server.baseUrl() + "/img/3.png", null, null);
+            fail("expected an IOException");
+        } catch (IOException expected) {
+            // 503
+        }
+    }
+
+    @Test
+    public void requestsPerHostAreCapped() throws Exception {
+        server.latency(300, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            long start = System.nanoTime();
+            List<Future<ImageHttpClient.Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String url = server.baseUrl() + "/img/" + (10 + i) + ".png";
+                futures.add(pool.submit(() -> client.fetch(url, null, null)));
+            }
+            for (Future<ImageHttpClient.Response> future : futures) {
+                assertEquals(200, future.get(5, TimeUnit.SECONDS).code);
+            }
+            // Two at a time: the second pair waits for the first
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 600);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
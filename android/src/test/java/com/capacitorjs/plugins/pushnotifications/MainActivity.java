@@ -0,0 +1,9 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.Activity;
+
+/**
+ * Stands in for the host app's MainActivity, which PushEnvironment looks up by name as the
+ * notification tap target.
+ */
+public class MainActivity extends Activity {}
@@ -0,0 +1,173 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+/**
+ * NotificationPoster's rate limit, coalescing and backlog grouping, against Robolectric's
+ * NotificationManager. A fresh poster per test, so no tokens or windows carry over.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationPosterTest {
+
+    private Context context;
+    private NotificationManager notificationManager;
+    private NotificationPoster poster;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.createNotificationChannel(new NotificationChannel("chat", "Chat", NotificationManager.IMPORTANCE_HIGH));
+        poster = new NotificationPoster(context);
+    }
+
+    @Test
+    public void burstIsCollapsedIntoOneGroupSummary() throws InterruptedException {
+        int burst = 12;
+        for (int i = 1; i <= burst; i++) {
+            poster.post(i, notification("Message " + i));
+        }
+        assertTrue(poster.awaitIdle(10_000));
+
+        List<Notification> posted = Shadows.shadowOf(notificationManager).getAllNotifications();
+        assertEquals(burst + 1, posted.size());
+        int summaries = 0;
+        int children = 0;
+        for (Notification notification : posted) {
+            if ((notification.flags & Notification.FLAG_GROUP_SUMMARY) != 0) {
+                assertEquals(NotificationPoster.GROUP_KEY, notification.getGroup());
+                summaries++;
+            } else if (NotificationPoster.GROUP_KEY.equals(notification.getGroup())) {
+                children++;
+            }
+        }
+        assertEquals(1, summaries);
+        // The first BURST go out at once; everything held back after them joins the group
+        assertEquals(burst - NotificationPoster.BURST, children);
+        Notification summary = Shadows.shadowOf(notificationManager).getNotification(NotificationPoster.SUMMARY_ID);
+        assertEquals(
+            (burst - NotificationPoster.BURST) + " new notifications",
+            summary.extras.getCharSequence(Notification.EXTRA_TITLE).toString()
+        );
+    }
+
+    @Test
+    public void postsBeyondTheBurstAreRateLimited() throws InterruptedException {
+        int burst = 12;
+        long start = System.nanoTime();
+        for (int i = 1; i <= burst; i++) {
+            poster.post(i, notification("Message " + i));
+        }
+        // Returns at once: nothing blocks the caller while posts are held back
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 500);
+        assertTrue(poster.awaitIdle(10_000));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        // Everything after the burst (plus the summary) at RATE_PER_SECOND, with some slack
+        long expectedMs = (long) ((burst + 1 - NotificationPoster.BURST) * 1000 / NotificationPoster.RATE_PER_SECOND);
+        assertTrue("took " + elapsedMs + "ms", elapsedMs >= expectedMs - 500);
+    }
+
+    @Test
+    public void updatesWithinTheWindowAreCoalesced() throws InterruptedException {
+        poster.post(7, notification("v1"));
+        poster.post(7, notification("v2"));
+        poster.post(7, notification("v3"));
+        assertEquals("v1", title(7));
+        assertTrue(poster.awaitIdle(5_000));
+        assertEquals("v3", title(7));
+        assertEquals(1, Shadows.shadowOf(notificationManager).size());
+    }
+
+    @Test
+    public void heldBackPostsScheduleAFlushJob() throws InterruptedException {
+        for (int i = 1; i <= NotificationPoster.BURST + 2; i++) {
+            poster.post(i, notification("Message " + i));
+        }
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        assertEquals(1, flushJobs(jobScheduler));
+        assertTrue(poster.awaitIdle(10_000));
+    }
+
+    @Test
+    public void onlyTheCurrentFlushJobRunCanFinish() throws InterruptedException {
+        for (int i = 1; i <= NotificationPoster.BURST + 2; i++) {
+            poster.post(i, notification("Message " + i));
+        }
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        int stopped = poster.flushJobStarted();
+        int replacement = poster.flushJobStarted();
+        jobScheduler.cancelAll();
+
+        // The stopped run finishing late must not reschedule over its replacement
+        poster.flushJobFinished(stopped);
+        assertEquals(0, flushJobs(jobScheduler));
+        poster.flushJobFinished(replacement);
+        assertEquals(1, flushJobs(jobScheduler));
+        assertTrue(poster.awaitIdle(10_000));
+    }
+
+    @Test
+    public void cancelRemovesTheTitleFromTheBacklogSummary() throws InterruptedException {
+        int burst = 12;
+        for (int i = 1; i <= burst; i++) {
+            poster.post(i, notification("Message " + i));
+        }
+        assertTrue(poster.awaitIdle(10_000));
+        poster.cancel(burst);
+        assertTrue(poster.awaitIdle(5_000));
+        Notification summary = Shadows.shadowOf(notificationManager).getNotification(NotificationPoster.SUMMARY_ID);
+        assertEquals(
+            (burst - NotificationPoster.BURST - 1) + " new notifications",
+            summary.extras.getCharSequence(Notification.EXTRA_TITLE).toString()
+        );
+    }
+
+    @Test
+    public void cancelDropsAHeldBackPost() throws InterruptedException {
+        poster.post(3, notification("first"));
+        poster.post(3, notification("second"));
+        poster.cancel(3);
+        assertTrue(poster.awaitIdle(5_000));
+        assertEquals(0, Shadows.shadowOf(notificationManager).size());
+    }
+
+    private Notification notification(String title) {
+        return new Notification.Builder(context, "chat")
+            .setContentTitle(title)
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .build();
+    }
+
+    private static int flushJobs(JobScheduler jobScheduler) {
+        int flushJobs = 0;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getService().getClassName().equals(NotificationFlushJobService.class.getName())) {
+                assertTrue(!job.isPersisted());
+                flushJobs++;
+            }
+        }
+        return flushJobs;
+    }
+
+    private String title(int notId) {
+        Notification notification = Shadows.shadowOf(notificationManager).getNotification(notId);
+        return notification.extras.getCharSequence(Notification.EXTRA_TITLE).toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.os.PersistableBundle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Render jobs handed off by NotificationRenderPipeline. A fresh pipeline per test, bound to
+ * this test's application.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationRenderPipelineTest {
+
+    private JobScheduler jobScheduler;
+    private NotificationRenderPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        pipeline = new NotificationRenderPipeline(context);
+    }
+
+    @Test
+    public void notIdsSharingAJobIdAreBothKept() {
+        // "Aa" and "BB" have the same String.hashCode, so they get the same job id
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        pipeline.scheduleJob(PushPayload.from(null, chat("Aa", "first")));
+        pipeline.scheduleJob(PushPayload.from(null, chat("BB", "second")));
+        pipeline.scheduleJob(PushPayload.from(null, chat("Aa", "third")));
+
+        List<JobInfo> jobs = renderJobs();
+        assertEquals(1, jobs.size());
+        assertTrue(jobs.get(0).isPersisted());
+        List<PushPayload> payloads = NotificationRenderPipeline.fromExtras(jobs.get(0).getExtras());
+        Map<String, String> messages = new HashMap<>();
+        for (PushPayload payload : payloads) {
+            messages.put(payload.get("notId"), payload.get("message"));
+        }
+        assertEquals(2, payloads.size());
+        assertEquals("second", messages.get("BB"));
+        // A newer payload for the same notId replaces the older one
+        assertEquals("third", messages.get("Aa"));
+    }
+
+    @Test
+    public void flatExtrasFromOlderJobsStillRender() {
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString("notId", "7");
+        extras.putString("message", "queued before an update");
+        List<PushPayload> payloads = NotificationRenderPipeline.fromExtras(extras);
+        assertEquals(1, payloads.size());
+        assertEquals("queued before an update", payloads.get(0).get("message"));
+    }
+
+    private List<JobInfo> renderJobs() {
+        List<JobInfo> jobs = new ArrayList<>();
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getService().getClassName().equals(NotificationRenderJobService.class.getName())) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    private static Map<String, String> chat(String notId, String message) {
+        Map<String, String> data = new HashMap<>();
+        data.put("channel_id", "chat");
+        data.put("category", PushNotificationsPlugin.CATEGORY_CHAT_MESSAGE);
+        data.put("notId", notId);
+        data.put("title", "Freegler");
+        data.put("message", message);
+        return data;
+    }
+}
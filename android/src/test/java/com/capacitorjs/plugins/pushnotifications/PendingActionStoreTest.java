@@ -0,0 +1,104 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import com.getcapacitor.JSObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PendingActionStoreTest {
+
+    private Context context;
+    private File dir;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        PendingActionStore.unload();
+        dir = new File(context.getFilesDir(), "push_actions");
+        delete(dir);
+    }
+
+    @Test
+    public void actionsAreReplayedInOrderUntilAcknowledged() {
+        PendingActionStore.append(context, action("reply"));
+        PendingActionStore.append(context, action("markRead"));
+        List<PendingActionStore.Entry> pending = PendingActionStore.pending(context);
+        assertEquals(2, pending.size());
+        assertEquals("reply", pending.get(0).action.getString("actionId"));
+
+        PendingActionStore.ack(context, pending.get(0).id);
+        PendingActionStore.unload();
+        pending = PendingActionStore.pending(context);
+        assertEquals(1, pending.size());
+        assertEquals("markRead", pending.get(0).action.getString("actionId"));
+
+        PendingActionStore.ack(context, pending.get(0).id);
+        PendingActionStore.compact(context);
+        assertEquals(0, PendingActionStore.pending(context).size());
+        assertTrue(!new File(dir, "actions.log").exists());
+    }
+
+    @Test
+    public void idsAfterRestartDontReuseAcknowledgedOnes() {
+        PendingActionStore.append(context, action("a"));
+        PendingActionStore.append(context, action("b"));
+        List<PendingActionStore.Entry> pending = PendingActionStore.pending(context);
+        PendingActionStore.ack(context, pending.get(1).id);
+
+        PendingActionStore.unload();
+        PendingActionStore.append(context, action("c"));
+        pending = PendingActionStore.pending(context);
+        assertEquals(2, pending.size());
+        assertTrue(pending.get(1).id > pending.get(0).id + 1);
+        assertEquals("c", pending.get(1).action.getString("actionId"));
+    }
+
+    @Test
+    public void failedScanIsRetriedBeforeHandingOutIds() throws IOException {
+        // A directory where the log should be makes the first scan fail
+        File log = new File(dir, "actions.log");
+        assertTrue(log.mkdirs());
+        assertEquals(0, PendingActionStore.pending(context).size());
+
+        log.delete();
+        try (OutputStream out = new FileOutputStream(log)) {
+            out.write("add\t5\t{\"actionId\":\"old\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        PendingActionStore.append(context, action("new"));
+        List<PendingActionStore.Entry> pending = PendingActionStore.pending(context);
+        assertEquals(2, pending.size());
+        assertEquals(5, pending.get(0).id);
+        assertEquals(6, pending.get(1).id);
+    }
+
+    private static JSObject action(String actionId) {
+        JSObject action = new JSObject();
+        action.put("actionId", actionId);
+        return action;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,113 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PendingMessageQueueTest {
+
+    private Context context;
+    private File dir;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        PendingMessageQueue.unload();
+        dir = new File(context.getFilesDir(), "push_pending");
+        delete(dir);
+    }
+
+    @Test
+    public void messagesSurviveRestartAndDrainOnce() {
+        PendingMessageQueue.append(context, "m1", data("first"));
+        PendingMessageQueue.append(context, null, data("second"));
+        PendingMessageQueue.unload();
+
+        List<PendingMessageQueue.Entry> drained = PendingMessageQueue.drain(context);
+        assertEquals(2, drained.size());
+        assertEquals("m1", drained.get(0).id);
+        assertEquals("first", drained.get(0).data.get("message"));
+        assertNull(drained.get(1).id);
+        assertEquals("second", drained.get(1).data.get("message"));
+
+        assertTrue(PendingMessageQueue.drain(context).isEmpty());
+        PendingMessageQueue.unload();
+        assertTrue(PendingMessageQueue.drain(context).isEmpty());
+    }
+
+    @Test
+    public void repeatsKeepTheNewestCopy() {
+        PendingMessageQueue.append(context, "a", data("old"));
+        PendingMessageQueue.append(context, "b", data("other"));
+        PendingMessageQueue.append(context, "a", data("new"));
+
+        List<PendingMessageQueue.Entry> drained = PendingMessageQueue.drain(context);
+        assertEquals(2, drained.size());
+        assertEquals("b", drained.get(0).id);
+        assertEquals("a", drained.get(1).id);
+        assertEquals("new", drained.get(1).data.get("message"));
+    }
+
+    @Test
+    public void expiredAndTruncatedLinesAreDropped() throws IOException {
+        long expired = System.currentTimeMillis() - PendingMessageQueue.MAX_AGE_MS - 1000;
+        dir.mkdirs();
+        try (OutputStream out = new FileOutputStream(new File(dir, "queue.jsonl"))) {
+            out.write(
+                ("{\"id\":\"stale\",\"time\":" + expired + ",\"data\":{}}\n{\"id\":\"cut\",\"ti").getBytes(StandardCharsets.UTF_8)
+            );
+        }
+        PendingMessageQueue.append(context, "fresh", data("fresh"));
+
+        List<PendingMessageQueue.Entry> drained = PendingMessageQueue.drain(context);
+        assertEquals(1, drained.size());
+        assertEquals("fresh", drained.get(0).id);
+    }
+
+    @Test
+    public void onlyTheNewestMessagesAreKept() {
+        int total = 2 * PendingMessageQueue.MAX_MESSAGES + 1;
+        for (int i = 0; i < total; i++) {
+            PendingMessageQueue.append(context, "m" + i, data("message " + i));
+        }
+
+        List<PendingMessageQueue.Entry> drained = PendingMessageQueue.drain(context);
+        assertEquals(PendingMessageQueue.MAX_MESSAGES, drained.size());
+        assertEquals("m" + (total - PendingMessageQueue.MAX_MESSAGES), drained.get(0).id);
+        assertEquals("m" + (total - 1), drained.get(drained.size() - 1).id);
+    }
+
+    private static Map<String, String> data(String message) {
+        Map<String, String> data = new HashMap<>();
+        data.put("message", message);
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,98 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// Robolectric only for a real org.json; the parser itself doesn't touch Android
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushPayloadParserTest {
+
+    @Test
+    public void validateSortsPayloads() {
+        Map<String, String> valid = valid();
+        assertEquals(PushPayloadParser.Validity.VALID, PushPayloadParser.validate(valid));
+
+        Map<String, String> legacy = valid();
+        legacy.remove("channel_id");
+        assertEquals(PushPayloadParser.Validity.LEGACY, PushPayloadParser.validate(legacy));
+
+        Map<String, String> missing = valid();
+        missing.remove("notId");
+        assertEquals(PushPayloadParser.Validity.MISSING_FIELDS, PushPayloadParser.validate(missing));
+
+        Map<String, String> cancel = new HashMap<>();
+        cancel.put("cancelChatId", "42");
+        assertEquals(PushPayloadParser.Validity.CANCEL, PushPayloadParser.validate(cancel));
+    }
+
+    @Test
+    public void linesSkipEmptyEntries() throws JSONException {
+        assertEquals(Arrays.asList("one", "two"), PushPayloadParser.parseLines("[\"one\", \"\", null, \"two\"]"));
+        assertTrue(PushPayloadParser.parseLines(null).isEmpty());
+        assertTrue(PushPayloadParser.parseLines("[]").isEmpty());
+    }
+
+    @Test
+    public void imageUrlsKeepOnlyHttpAndStopAtMax() throws JSONException {
+        String json = "[\"ftp://a/1.jpg\", \"https://a/2.jpg\", \"httpfoo\", \"http://a/3.jpg\", \"https://a/4.jpg\"]";
+        assertEquals(Arrays.asList("https://a/2.jpg", "http://a/3.jpg"), PushPayloadParser.parseImageUrls(json, 2));
+        // Elements after the max aren't read, so trailing garbage doesn't matter
+        assertEquals(Arrays.asList("https://a/1.jpg"), PushPayloadParser.parseImageUrls("[\"https://a/1.jpg\", oops", 1));
+    }
+
+    @Test
+    public void malformedImagesAreAJsonException() {
+        try {
+            PushPayloadParser.parseImageUrls("{\"url\": \"https://a/1.jpg\"}", 4);
+            fail("expected a JSONException");
+        } catch (JSONException expected) {
+            // not an array
+        }
+    }
+
+    @Test
+    public void hasImagesNeedsAnActualUrl() {
+        assertTrue(PushPayloadParser.hasImages("https://a/1.jpg", null));
+        assertTrue(PushPayloadParser.hasImages(null, "[\"x\", \"https://a/1.jpg\"]"));
+        assertFalse(PushPayloadParser.hasImages(null, "[\"see http docs\"]"));
+        assertFalse(PushPayloadParser.hasImages(null, "{\"http\": 1}"));
+        assertFalse(PushPayloadParser.hasImages("", "[]"));
+    }
+
+    @Test
+    public void moreCountIsZeroWhenAbsentAndFlaggedWhenInvalid() {
+        assertEquals(0, PushPayloadParser.parseMoreCount(null));
+        assertEquals(0, PushPayloadParser.parseMoreCount(""));
+        assertEquals(5, PushPayloadParser.parseMoreCount("5"));
+        assertEquals(PushPayloadParser.INVALID_COUNT, PushPayloadParser.parseMoreCount("five"));
+    }
+
+    @Test
+    public void copyExtrasCopiesEveryEntry() {
+        Map<String, String> copy = new HashMap<>();
+        PushPayloadParser.copyExtras(valid(), copy::put);
+        assertEquals(valid(), copy);
+    }
+
+    private static Map<String, String> valid() {
+        Map<String, String> data = new HashMap<>();
+        data.put("channel_id", "chat");
+        data.put("title", "Title");
+        data.put("message", "Message");
+        data.put("count", "1");
+        data.put("notId", "7");
+        return data;
+    }
+}
@@ -0,0 +1,76 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushPayloadTest {
+
+    @Test
+    public void renderKeyFollowsContentNotMessageId() {
+        Map<String, String> data = chat("Hello");
+        assertEquals(PushPayload.from("a", data).renderKey(), PushPayload.from(null, data).renderKey());
+        assertNotEquals(PushPayload.from("a", data).renderKey(), PushPayload.from("a", chat("Hello!")).renderKey());
+    }
+
+    @Test
+    public void renderKeyDoesNotConfuseShiftedFields() {
+        // Same concatenated text, different split between key and value
+        Map<String, String> a = chat("x");
+        a.put("ab", "c");
+        Map<String, String> b = chat("x");
+        b.put("a", "bc");
+        assertNotEquals(PushPayload.from(null, a).renderKey(), PushPayload.from(null, b).renderKey());
+    }
+
+    @Test
+    public void scalarFieldsAreParsedOnce() {
+        Map<String, String> data = chat("Hi");
+        data.put("timestamp", "1700000000");
+        data.put("moreCount", "3");
+        PushPayload payload = PushPayload.from("id", data);
+        assertEquals(PushPayloadParser.Validity.VALID, payload.validity);
+        assertEquals(7, payload.notId);
+        assertEquals(1700000000000L, payload.timestampMs);
+        assertEquals(3, payload.moreCount);
+
+        data.put("count", "many");
+        assertEquals(PushPayloadParser.Validity.MALFORMED, PushPayload.from("id", data).validity);
+    }
+
+    @Test
+    public void onlyDigestImagesCount() {
+        Map<String, String> digest = chat("Hi");
+        digest.put("category", "NEW_POSTS");
+        digest.put("images", "[\"https://a/1.jpg\"]");
+        assertTrue(PushPayload.from(null, digest).hasImages());
+
+        digest.put("images", "[\"no http here\"]");
+        assertFalse(PushPayload.from(null, digest).hasImages());
+
+        Map<String, String> chat = chat("Hi");
+        chat.put("images", "[\"https://a/1.jpg\"]");
+        assertFalse(PushPayload.from(null, chat).hasImages());
+    }
+
+    private static Map<String, String> chat(String message) {
+        Map<String, String> data = new HashMap<>();
+        data.put("channel_id", "chat");
+        data.put("category", "CHAT_MESSAGE");
+        data.put("title", "Title");
+        data.put("message", message);
+        data.put("count", "1");
+        data.put("notId", "7");
+        return data;
+    }
+}
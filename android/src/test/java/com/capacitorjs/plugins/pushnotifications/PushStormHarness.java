@@ -0,0 +1,293 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import android.app.NotificationManager;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.service.notification.StatusBarNotification;
+import com.getcapacitor.JSObject;
+import com.google.firebase.messaging.RemoteMessage;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.robolectric.Robolectric;
+import org.robolectric.Shadows;
+
+/**
+ * Drives a storm of synthetic pushes through the plugin the way FCM would, one message at a
+ * time at a target rate, and reports throughput, per-message latency percentiles, peak heap,
+ * notification outcomes and the per-stage timings from PushMetrics.
+ *
+ * Background mode calls MessagingService.onMessageReceived with no bridge, as when the app
+ * isn't running. Foreground mode calls PushNotificationsPlugin.fireNotification and then waits
+ * on the render pipeline the way MessagingService does when the plugin handled the message.
+ *
+ * Options can be overridden with pushStorm.* system properties (see Options.fromSystemProperties),
+ * which the Gradle test task passes through, e.g.
+ * ./gradlew test --tests '*PushStormTest*' -DpushStorm.messages=2000 -DpushStorm.rate=200
+ */
+class PushStormHarness {
+
+    static final class Options {
+
+        int messages = 200;
+        double ratePerSecond = 100;
+        boolean foreground = false;
+        long seed = 1;
+        int imagePoolSize = 40;
+        /** Relative frequency of CHAT_MESSAGE, NEW_POSTS, LEGACY and MALFORMED payloads. */
+        int[] weights = { 40, 40, 10, 10 };
+        long imageLatencyMs = 20;
+        long imageJitterMs = 30;
+        double imageFailureRate = 0.05;
+
+        static Options fromSystemProperties() {
+            Options options = new Options();
+            options.messages = Integer.getInteger("pushStorm.messages", options.messages);
+            options.ratePerSecond = Double.parseDouble(System.getProperty("pushStorm.rate", Double.toString(options.ratePerSecond)));
+            options.foreground = Boolean.parseBoolean(System.getProperty("pushStorm.foreground", Boolean.toString(options.foreground)));
+            options.seed = Long.getLong("pushStorm.seed", options.seed);
+            options.imagePoolSize = Integer.getInteger("pushStorm.imagePool", options.imagePoolSize);
+            options.imageLatencyMs = Long.getLong("pushStorm.imageLatencyMs", options.imageLatencyMs);
+            options.imageJitterMs = Long.getLong("pushStorm.imageJitterMs", options.imageJitterMs);
+            options.imageFailureRate = Double.parseDouble(
+                System.getProperty("pushStorm.imageFailureRate", Double.toString(options.imageFailureRate))
+            );
+            String weights = System.getProperty("pushStorm.weights");
+            if (weights != null) {
+                options.weights = Arrays.stream(weights.split(",")).mapToInt(w -> Integer.parseInt(w.trim())).toArray();
+            }
+            return options;
+        }
+    }
+
+    static final class Report {
+
+        final Options options;
+        final Map<SyntheticPushes.Kind, Integer> sent = new EnumMap<>(SyntheticPushes.Kind.class);
+        /** Distinct notIds of the chat and new posts pushes sent: the most notifications there can be. */
+        final Set<String> notIds = new HashSet<>();
+        long elapsedNanos;
+        long[] latenciesNanos;
+        long peakHeapBytes;
+        int handedOff;
+        int activeNotifications;
+        /** Active notifications that aren't group summaries, once the poster has drained. */
+        int postedNotifications;
+        int postedSummaries;
+        int jsEvents;
+        int imageRequests;
+        int imageFailures;
+        JSObject metrics;
+
+        Report(Options options) {
+            this.options = options;
+        }
+
+        int sent(SyntheticPushes.Kind kind) {
+            return sent.getOrDefault(kind, 0);
+        }
+
+        long outcome(String name) {
+            return metrics.optJSONObject("outcomes").optLong(name);
+        }
+
+        double messagesPerSecond() {
+            return latenciesNanos.length / (elapsedNanos / 1e9);
+        }
+
+        double latencyMillis(double percentile) {
+            if (latenciesNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, Math.min(index, latenciesNanos.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                Locale.ROOT,
+                "push storm: %d messages (%s) in %.2fs = %.1f msg/s (target %.1f)%n"
+                    + "  sent: %s%n"
+                    + "  latency ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n"
+                    + "  peak heap: %.1f MB%n"
+                    + "  outcomes: %s, active notifications=%d, handed off=%d, js events=%d%n"
+                    + "  posted: %d notifications for %d notIds, %d summaries%n"
+                    + "  image server: requests=%d failures=%d%n"
+                    + "  stages: %s",
+                latenciesNanos.length,
+                options.foreground ? "foreground" : "background",
+                elapsedNanos / 1e9,
+                messagesPerSecond(),
+                options.ratePerSecond,
+                sent,
+                latencyMillis(0.50),
+                latencyMillis(0.90),
+                latencyMillis(0.99),
+                latencyMillis(1.0),
+                peakHeapBytes / (1024.0 * 1024.0),
+                metrics.optJSONObject("outcomes"),
+                activeNotifications,
+                handedOff,
+                jsEvents,
+                postedNotifications,
+                notIds.size(),
+                postedSummaries,
+                imageRequests,
+                imageFailures,
+                metrics.optJSONObject("stages")
+            );
+        }
+    }
+
+    /** Plugin without a bridge: context from the harness, JS events counted instead of sent. */
+    static final class HarnessPlugin extends PushNotificationsPlugin {
+
+        private final Context context;
+        final AtomicInteger events = new AtomicInteger();
+
+        HarnessPlugin(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public Context getContext() {
+            return context;
+        }
+
+        @Override
+        protected void notifyListeners(String eventName, JSObject data, boolean retainUntilConsumed) {
+            events.incrementAndGet();
+        }
+    }
+
+    private final Context context;
+    private final Options options;
+
+    PushStormHarness(Context context, Options options) {
+        this.context = context;
+        this.options = options;
+    }
+
+    Report run() throws Exception {
+        Report report = new Report(options);
+        PushMetrics.snapshot(true);
+
+        try (
+            FakeImageServer images = new FakeImageServer()
+                .latency(options.imageLatencyMs, options.imageJitterMs)
+                .failureRate(options.imageFailureRate);
+            HeapSampler heap = new HeapSampler()
+        ) {
+            SyntheticPushes pushes = new SyntheticPushes(options.seed, images.baseUrl(), options.imagePoolSize, options.weights);
+            MessagingService service = Robolectric.setupService(MessagingService.class);
+            HarnessPlugin plugin = new HarnessPlugin(context);
+            NotificationRenderPipeline pipeline = NotificationRenderPipeline.get(context);
+
+            long[] latencies = new long[options.messages];
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.ratePerSecond);
+            long start = System.nanoTime();
+            for (int i = 0; i < options.messages; i++) {
+                long due = start + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                SyntheticPushes.Kind kind = pushes.nextKind();
+                report.sent.merge(kind, 1, Integer::sum);
+                RemoteMessage message = pushes.next(kind);
+                if (kind == SyntheticPushes.Kind.CHAT_MESSAGE || kind == SyntheticPushes.Kind.NEW_POSTS) {
+                    report.notIds.add(message.getData().get("notId"));
+                }
+
+                long begin = System.nanoTime();
+                if (options.foreground) {
+                    PushPayload payload = PushPayload.from(message.getMessageId(), message.getData());
+                    plugin.fireNotification(message, payload, true);
+                    if (pipeline.awaitOrHandOff(payload, NotificationRenderPipeline.IN_SERVICE_BUDGET_MS) == null) {
+                        report.handedOff++;
+                    }
+                } else {
+                    service.onMessageReceived(message);
+                }
+                latencies[i] = System.nanoTime() - begin;
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            report.latenciesNanos = latencies;
+            report.peakHeapBytes = heap.peak();
+            report.jsEvents = plugin.events.get();
+            report.imageRequests = images.requests();
+            report.imageFailures = images.failures();
+        }
+
+        // Stands in for NotificationFlushJobService, which Robolectric's JobScheduler never runs
+        NotificationPoster.get(context).awaitIdle(NotificationPoster.FLUSH_JOB_MAX_MS);
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        report.activeNotifications = Shadows.shadowOf(notificationManager).size();
+        for (StatusBarNotification notification : notificationManager.getActiveNotifications()) {
+            if (notification.getId() == NotificationPoster.SUMMARY_ID || notification.getId() == NotificationHelper.CHAT_SUMMARY_ID) {
+                report.postedSummaries++;
+            } else {
+                report.postedNotifications++;
+            }
+        }
+        if (!options.foreground) {
+            // MessagingService doesn't say whether it handed off, but each hand-off leaves a render job
+            JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+                if (job.getService().getClassName().equals(NotificationRenderJobService.class.getName())) {
+                    report.handedOff++;
+                }
+            }
+        }
+        report.metrics = PushMetrics.snapshot(true);
+        return report;
+    }
+
+    /** Samples used heap every few milliseconds on a daemon thread. */
+    private static final class HeapSampler implements AutoCloseable {
+
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        HeapSampler() {
+            thread = new Thread(
+                () -> {
+                    Runtime runtime = Runtime.getRuntime();
+                    while (running) {
+                        peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                },
+                "push-storm-heap"
+            );
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long peak() {
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            thread.interrupt();
+        }
+    }
+}
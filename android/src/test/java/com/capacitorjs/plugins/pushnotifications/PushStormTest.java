@@ -0,0 +1,87 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+/**
+ * Runs the push storm harness in both app states and checks every synthetic push is
+ * accounted for, that no message holds the FCM thread past its budget, and that the storm
+ * leaves at most one notification per notId. The printed report is the point: compare it
+ * before and after a change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PushStormTest {
+
+    /**
+     * Images come from a local server in tens of milliseconds, so nine messages in ten should
+     * be done well within this; a blocking wait anywhere on the FCM thread shows up here.
+     */
+    private static final long P90_LATENCY_MS = 1000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.createNotificationChannel(new NotificationChannel("chat", "Chat", NotificationManager.IMPORTANCE_HIGH));
+        notificationManager.createNotificationChannel(
+            new NotificationChannel("newposts", "New posts", NotificationManager.IMPORTANCE_DEFAULT)
+        );
+    }
+
+    @Test
+    public void backgroundStorm() throws Exception {
+        PushStormHarness.Options options = PushStormHarness.Options.fromSystemProperties();
+        options.foreground = false;
+        assertAccountedFor(new PushStormHarness(context, options).run());
+    }
+
+    @Test
+    public void foregroundStorm() throws Exception {
+        PushStormHarness.Options options = PushStormHarness.Options.fromSystemProperties();
+        options.foreground = true;
+        PushStormHarness.Report report = new PushStormHarness(context, options).run();
+        assertAccountedFor(report);
+        assertEquals(options.messages, report.jsEvents);
+    }
+
+    private static void assertAccountedFor(PushStormHarness.Report report) {
+        System.out.println(report);
+
+        int valid = report.sent(SyntheticPushes.Kind.CHAT_MESSAGE) + report.sent(SyntheticPushes.Kind.NEW_POSTS);
+        assertEquals(report.sent(SyntheticPushes.Kind.LEGACY), report.outcome("legacy_ignored"));
+        assertEquals(
+            report.sent(SyntheticPushes.Kind.MALFORMED),
+            report.outcome("missing_fields") + report.outcome("error")
+        );
+        assertEquals(0, report.outcome("duplicate"));
+        // Anything handed off to a job may not have rendered yet
+        assertTrue(report.outcome("shown") <= valid);
+        assertTrue(report.outcome("shown") >= valid - report.handedOff);
+        assertTrue(report.activeNotifications > 0);
+
+        // onMessageReceived waits for the render at most for its budget, never for the poster
+        assertTrue(report.latencyMillis(1.0) <= NotificationRenderPipeline.IN_SERVICE_BUDGET_MS + 500);
+        assertTrue(report.latencyMillis(0.90) <= P90_LATENCY_MS);
+
+        // Repeats of a notId replace each other, and a burst adds one summary, not one per post
+        assertTrue(report.postedNotifications > 0);
+        assertTrue(report.postedNotifications <= report.notIds.size());
+        assertTrue(report.postedSummaries <= 2);
+        assertEquals(report.activeNotifications, report.postedNotifications + report.postedSummaries);
+    }
+}
@@ -0,0 +1,85 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SeenMessageIdsTest {
+
+    private Context context;
+    private File dir;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        SeenMessageIds.unload();
+        dir = new File(context.getFilesDir(), "push_seen");
+        delete(dir);
+    }
+
+    @Test
+    public void repeatsAreDetectedAcrossRestart() {
+        assertTrue(SeenMessageIds.markSeen(context, "a"));
+        assertFalse(SeenMessageIds.markSeen(context, "a"));
+        SeenMessageIds.unload();
+        assertFalse(SeenMessageIds.markSeen(context, "a"));
+        assertTrue(SeenMessageIds.markSeen(context, "b"));
+    }
+
+    @Test
+    public void missingIdsAreAlwaysNew() {
+        assertTrue(SeenMessageIds.markSeen(context, null));
+        assertTrue(SeenMessageIds.markSeen(context, null));
+        assertTrue(SeenMessageIds.markSeen(context, ""));
+        assertTrue(SeenMessageIds.markSeen(context, ""));
+    }
+
+    @Test
+    public void onlyTheNewestIdsAreKept() throws IOException {
+        int total = 2 * SeenMessageIds.MAX_IDS + 1;
+        for (int i = 0; i < total; i++) {
+            assertTrue(SeenMessageIds.markSeen(context, "id" + i));
+        }
+        // The last add went over 2 * MAX_IDS lines, so the file was rewritten to the set
+        assertEquals(SeenMessageIds.MAX_IDS, lines(new File(dir, "ids.txt")));
+
+        SeenMessageIds.unload();
+        assertFalse(SeenMessageIds.markSeen(context, "id" + (total - 1)));
+        assertFalse(SeenMessageIds.markSeen(context, "id" + (total - SeenMessageIds.MAX_IDS)));
+        assertTrue(SeenMessageIds.markSeen(context, "id" + (total - SeenMessageIds.MAX_IDS - 1)));
+    }
+
+    private static int lines(File file) throws IOException {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,137 @@
+package com.capacitorjs.plugins.pushnotifications;
+
+import com.google.firebase.messaging.RemoteMessage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator of Freegle-shaped FCM data messages for the push storm harness:
+ * chat messages, NEW_POSTS digests with 1-4 images, legacy payloads (no channel_id) and
+ * malformed ones (missing or unparseable required fields).
+ */
+class SyntheticPushes {
+
+    enum Kind {
+        CHAT_MESSAGE,
+        NEW_POSTS,
+        LEGACY,
+        MALFORMED
+    }
+
+    private final Random random;
+    private final String imageBaseUrl;
+    private final int imagePoolSize;
+    private final int[] weights;
+    private final int totalWeight;
+    private int sequence;
+    // Message ids must not repeat across runs in one process, or SeenMessageIds drops them
+    private final String idPrefix = "storm-" + Long.toHexString(System.nanoTime()) + "-";
+
+    /**
+     * @param imageBaseUrl base URL images are served from, e.g. FakeImageServer.baseUrl()
+     * @param imagePoolSize number of distinct image URLs to draw from; smaller means more cache hits
+     * @param weights relative frequency of each Kind, in declaration order
+     */
+    SyntheticPushes(long seed, String imageBaseUrl, int imagePoolSize, int... weights) {
+        if (weights.length != Kind.values().length) {
+            throw new IllegalArgumentException("Need one weight per kind");
+        }
+        this.random = new Random(seed);
+        this.imageBaseUrl = imageBaseUrl;
+        this.imagePoolSize = imagePoolSize;
+        this.weights = weights.clone();
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        this.totalWeight = total;
+    }
+
+    Kind nextKind() {
+        int pick = random.nextInt(totalWeight);
+        for (Kind kind : Kind.values()) {
+            pick -= weights[kind.ordinal()];
+            if (pick < 0) {
+                return kind;
+            }
+        }
+        return Kind.CHAT_MESSAGE;
+    }
+
+    RemoteMessage next(Kind kind) {
+        int seq = ++sequence;
+        Map<String, String> data;
+        switch (kind) {
+            case NEW_POSTS:
+                data = newPosts(seq, 1 + random.nextInt(4));
+                break;
+            case LEGACY:
+                data = chat(seq);
+                data.remove("channel_id");
+                break;
+            case MALFORMED:
+                data = chat(seq);
+                if (random.nextBoolean()) {
+                    data.remove("title");
+                } else {
+                    data.put("count", "many");
+                }
+                break;
+            default:
+                data = chat(seq);
+                break;
+        }
+        return new RemoteMessage.Builder("harness@fcm.googleapis.com").setMessageId(idPrefix + seq).setData(data).build();
+    }
+
+    private Map<String, String> chat(int seq) {
+        Map<String, String> data = new HashMap<>();
+        int chatId = 1 + random.nextInt(20);
+        data.put("channel_id", "chat");
+        data.put("category", PushNotificationsPlugin.CATEGORY_CHAT_MESSAGE);
+        data.put("notId", Integer.toString(chatId));
+        data.put("title", "Freegler " + chatId);
+        data.put("message", "Is the sofa still available? (" + seq + ")");
+        data.put("count", Integer.toString(1 + random.nextInt(5)));
+        data.put("timestamp", Long.toString(System.currentTimeMillis() / 1000));
+        data.put("image", imageUrl());
+        return data;
+    }
+
+    private Map<String, String> newPosts(int seq, int images) {
+        Map<String, String> data = new HashMap<>();
+        data.put("channel_id", "newposts");
+        data.put("category", PushNotificationsPlugin.CATEGORY_NEW_POSTS);
+        data.put("notId", Integer.toString(1000 + random.nextInt(5)));
+        data.put("title", images + " new posts near you");
+        data.put("message", "Sofa, Bike, Books, Lamp");
+        data.put("summary", "Freegle Anytown");
+        data.put("count", Integer.toString(images));
+        data.put("moreCount", Integer.toString(random.nextInt(10)));
+        data.put("timestamp", Long.toString(System.currentTimeMillis() / 1000));
+        StringBuilder lines = new StringBuilder("[");
+        StringBuilder urls = new StringBuilder("[");
+        String first = null;
+        for (int i = 0; i < images; i++) {
+            String url = imageUrl();
+            if (first == null) {
+                first = url;
+            }
+            if (i > 0) {
+                lines.append(',');
+                urls.append(',');
+            }
+            lines.append("\"OFFER: Item ").append(seq).append('-').append(i).append(" (Anytown)\"");
+            urls.append('"').append(url).append('"');
+        }
+        data.put("lines", lines.append(']').toString());
+        data.put("images", urls.append(']').toString());
+        data.put("image", first);
+        return data;
+    }
+
+    private String imageUrl() {
+        return imageBaseUrl + "/img/" + random.nextInt(imagePoolSize) + ".png";
+    }
+}
@@ -20,6 +20,52 @@ declare module '@capacitor/cli' {
              * @example ["badge", "sound", "alert"]
              */
             presentationOptions: PresentationOption[];
+            /**
+             * Show the text of a notification immediately and add its large icon,
+             * picture or collage in a silent update once the images have loaded,
+             * instead of waiting for the images before showing anything.
+             *
+             * Only available on Android.
+             *
+             * @since 7.0.5
+             * @default false
+             */
+            progressiveImages?: boolean;
+            /**
+             * Minimum level written to logcat by the native plugin.
+             * Defaults to `debug` for debuggable builds and `info` otherwise.
+             *
+             * The background push log is written at every level except `none`.
+             *
+             * Only available on Android.
+             *
+             * @since 7.0.5
+             */
+            logLevel?: 'verbose' | 'debug' | 'info' | 'warn' | 'error' | 'none';
+            /**
+             * Include a truncated dump of each push payload in debug logging and
+             * in the background push log.
+             *
+             * Only available on Android.
+             *
+             * @since 7.0.5
+             * @default false
+             */
+            logPayloads?: boolean;
+            /**
+             * Deliver received notifications and actions to JS in batches, as
+             * `pushNotificationsReceived` events, instead of one
+             * `pushNotificationReceived` / `pushNotificationActionPerformed`
+             * event each. Events arriving within 100ms of each other (up to 50)
+             * are delivered together, which keeps bursts and replays of queued
+             * pushes from flooding the WebView.
+             *
+             * Only available on Android.
+             *
+             * @since 7.0.5
+             * @default false
+             */
+            batchEvents?: boolean;
         };
     }
 }
@@ -38,6 +84,7 @@ export interface PushNotificationsPlugin {
      * Unregister the app from push notifications.
      *
      * This will delete a firebase token on Android, and unregister APNS on iOS.
+     * On Android it also clears the cache of notification images.
      *
      * @since 5.0.0
      */
@@ -45,9 +92,14 @@ export interface PushNotificationsPlugin {
     /**
      * Get a list of notifications that are visible on the notifications screen.
      *
+     * On Android the options filter the list and choose which fields are
+     * returned. `data` is each notification's string extras, as before; the
+     * `chatId`, `category` and `data` filters match the push payload it was
+     * rendered from.
+     *
      * @since 1.0.0
      */
-    getDeliveredNotifications(): Promise<DeliveredNotifications>;
+    getDeliveredNotifications(options?: GetDeliveredNotificationsOptions): Promise<DeliveredNotifications>;
     /**
      * Remove the specified notifications from the notifications screen.
      *
@@ -138,6 +190,17 @@ export interface PushNotificationsPlugin {
      * @since 1.0.0
      */
     addListener(eventName: 'pushNotificationActionPerformed', listenerFunc: (notification: ActionPerformed) => void): Promise<PluginListenerHandle>;
+    /**
+     * Called with a batch of received notifications and actions when the
+     * `batchEvents` config option is set. The individual
+     * `pushNotificationReceived` and `pushNotificationActionPerformed` events
+     * are then not sent.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    addListener(eventName: 'pushNotificationsReceived', listenerFunc: (batch: PushNotificationBatch) => void): Promise<PluginListenerHandle>;
     /**
      * Remove all native listeners for this plugin.
      *
@@ -157,11 +220,13 @@ export interface PushNotificationsPlugin {
      * Get background push notification debug log.
      * Returns log entries from MessagingService when app was not running.
      *
+     * Pass the `cursor` from a previous result as `since` to get only newer entries.
+     *
      * Only available on Android.
      *
      * @since 7.0.3
      */
-    getBackgroundPushLog(): Promise<BackgroundPushLogResult>;
+    getBackgroundPushLog(options?: BackgroundPushLogOptions): Promise<BackgroundPushLogResult>;
     /**
      * Clear the background push notification debug log.
      *
@@ -170,6 +235,200 @@ export interface PushNotificationsPlugin {
      * @since 7.0.3
      */
     clearBackgroundPushLog(): Promise<void>;
+    /**
+     * Download images that upcoming push notifications are likely to use (chat
+     * avatars, post photos) into the native notification image cache, so those
+     * notifications can be shown without waiting for the network.
+     *
+     * Runs in the background; the promise resolves as soon as the work is queued.
+     * Nothing is downloaded while Data Saver is on.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    prefetchImages(options: PrefetchImagesOptions): Promise<PrefetchImagesResult>;
+    /**
+     * Get timings for each stage of native push handling (delivery, image
+     * fetch and decode, collage, notify, JS dispatch) plus notification
+     * outcome counts and image cache statistics, collected since the last reset.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    getPushMetrics(options?: GetPushMetricsOptions): Promise<PushMetricsResult>;
+}
+export interface GetPushMetricsOptions {
+    /**
+     * Reset the collected metrics after reading them.
+     *
+     * @default true
+     * @since 7.0.5
+     */
+    reset?: boolean;
+}
+export interface StageMetrics {
+    /**
+     * Number of samples recorded for the stage.
+     *
+     * @since 7.0.5
+     */
+    count: number;
+    /**
+     * Mean duration in milliseconds.
+     *
+     * @since 7.0.5
+     */
+    meanMs: number;
+    /**
+     * Longest duration in milliseconds.
+     *
+     * @since 7.0.5
+     */
+    maxMs: number;
+    /**
+     * Median duration in milliseconds, to histogram bucket precision.
+     *
+     * @since 7.0.5
+     */
+    p50Ms: number;
+    /**
+     * 90th percentile duration in milliseconds, to histogram bucket precision.
+     *
+     * @since 7.0.5
+     */
+    p90Ms: number;
+    /**
+     * 99th percentile duration in milliseconds, to histogram bucket precision.
+     *
+     * @since 7.0.5
+     */
+    p99Ms: number;
+}
+export interface PushMetricsResult {
+    /**
+     * Timings keyed by stage name, e.g. `delivery`, `image_fetch`, `notify`,
+     * `queue_wait_interactive`, `queue_wait_background`.
+     *
+     * @since 7.0.5
+     */
+    stages: {
+        [stage: string]: StageMetrics;
+    };
+    /**
+     * Number of pushes per outcome, e.g. `shown`, `cleared`, `cancelled`, `duplicate`, `error`.
+     *
+     * @since 7.0.5
+     */
+    outcomes: {
+        [outcome: string]: number;
+    };
+    /**
+     * Notification image cache hit counters and sizes.
+     *
+     * @since 7.0.5
+     */
+    imageCache: {
+        memoryHits: number;
+        diskHits: number;
+        revalidated: number;
+        misses: number;
+        memoryBytes: number;
+        memoryMaxBytes: number;
+        diskBytes: number;
+    };
+    /**
+     * Renders queued or running in each render lane (`interactive` for chat
+     * messages, `background` for digests), now and at most since the last reset.
+     *
+     * @since 7.0.5
+     */
+    lanes: {
+        [lane: string]: {
+            depth: number;
+            maxDepth: number;
+        };
+    };
+}
+export interface PrefetchImage {
+    /**
+     * The image URL, exactly as it will appear in push payloads.
+     *
+     * @since 7.0.5
+     */
+    url: string;
+    /**
+     * Higher priorities are downloaded first.
+     *
+     * @default 0
+     * @since 7.0.5
+     */
+    priority?: number;
+}
+export interface PrefetchImagesOptions {
+    /**
+     * The images to prefetch, as URLs or URL/priority pairs. At most 50 are used.
+     *
+     * @since 7.0.5
+     */
+    images: (string | PrefetchImage)[];
+    /**
+     * Stop once about this many bytes have been downloaded.
+     *
+     * @default 5242880
+     * @since 7.0.5
+     */
+    maxBytes?: number;
+    /**
+     * Only prefetch when the active network is unmetered (e.g. Wi-Fi).
+     *
+     * @default false
+     * @since 7.0.5
+     */
+    unmeteredOnly?: boolean;
+}
+export interface PrefetchImagesResult {
+    /**
+     * Number of images queued for download. 0 if network conditions don't allow prefetching.
+     *
+     * @since 7.0.5
+     */
+    queued: number;
+}
+export interface BackgroundPushLogOptions {
+    /**
+     * Only return entries with a sequence number greater than this.
+     *
+     * @since 7.0.5
+     */
+    since?: number;
+    /**
+     * Return at most this many entries, oldest first.
+     *
+     * @since 7.0.5
+     */
+    limit?: number;
+}
+export interface BackgroundPushLogEntry {
+    /**
+     * Sequence number of the entry; increases with every entry written.
+     *
+     * @since 7.0.5
+     */
+    seq: number;
+    /**
+     * When the entry was written, in milliseconds since the epoch.
+     *
+     * @since 7.0.5
+     */
+    time: number;
+    /**
+     * The logged text.
+     *
+     * @since 7.0.5
+     */
+    text: string;
 }
 export interface BackgroundPushLogResult {
     /**
@@ -178,6 +437,18 @@ export interface BackgroundPushLogResult {
      * @since 7.0.3
      */
     log: string;
+    /**
+     * The returned entries, oldest first.
+     *
+     * @since 7.0.5
+     */
+    entries: BackgroundPushLogEntry[];
+    /**
+     * Sequence number of the last returned entry; pass as `since` to continue from here.
+     *
+     * @since 7.0.5
+     */
+    cursor: number;
 }
 export interface RegisterActionCategoriesResult {
     /**
@@ -301,6 +572,20 @@ export interface ActionPerformed {
      */
     notification: PushNotificationSchema;
 }
+export interface PushNotificationBatch {
+    /**
+     * Notifications received, oldest first.
+     *
+     * @since 7.0.5
+     */
+    notifications: PushNotificationSchema[];
+    /**
+     * Actions performed on notifications, oldest first.
+     *
+     * @since 7.0.5
+     */
+    actions: ActionPerformed[];
+}
 export interface Token {
     /**
      * On iOS it contains the APNS token.
@@ -318,6 +603,62 @@ export interface RegistrationError {
      */
     error: string;
 }
+export interface GetDeliveredNotificationsOptions {
+    /**
+     * Only notifications posted to this channel.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    channelId?: string;
+    /**
+     * Only notifications whose push payload has this `category`, e.g. `CHAT_MESSAGE`.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    category?: string;
+    /**
+     * Only notifications in this group.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    group?: string;
+    /**
+     * Only notifications whose push payload has this `chatid`.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    chatId?: string;
+    /**
+     * Only notifications whose push payload has all of these keys. A `null`
+     * value only requires the key to be present; anything else must match
+     * exactly.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    data?: {
+        [key: string]: string | null;
+    };
+    /**
+     * Fields to return for each notification, e.g. `['id', 'data']`.
+     * Defaults to all of `id`, `tag`, `title`, `body`, `group`,
+     * `groupSummary` and `data`.
+     *
+     * Only available on Android.
+     *
+     * @since 7.0.5
+     */
+    fields?: ('id' | 'tag' | 'title' | 'body' | 'group' | 'groupSummary' | 'data')[];
+}
 export interface DeliveredNotifications {
     /**
      * List of notifications that are visible on the